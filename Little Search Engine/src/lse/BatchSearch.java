@@ -0,0 +1,211 @@
+package lse;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class answers many "kw1 or kw2 or ... or kwN" top K searches at once.
+ *
+ * The queries of a batch are grouped by keyword, and the occurrence list of each distinct
+ * keyword is read from the index once, into a pair of arrays shared by every query that has
+ * the keyword. Only the first K occurrences of a list are read: an occurrence after those
+ * comes after K other documents of the same list, so by the time a merge would reach it, K
+ * documents have been found. The queries are then merged by TopKMerger over the shared
+ * arrays, once for each distinct query of the batch. Both steps are split across a
+ * fork-join pool.
+ *
+ * Each result is the same as that of a separate TopKMerger search of the same index.
+ *
+ */
+public class BatchSearch {
+
+	/**
+	 * Number of keywords read, or queries merged, by one fork-join task.
+	 */
+	private static final int CHUNK = 16;
+
+	// prevent instantiation
+	private BatchSearch() { }
+
+	/**
+	 * The first occurrences of a keyword, read from an index.
+	 */
+	private static class Prefix {
+		String[] documents;
+		int[] frequencies;
+		int size;
+	}
+
+	/**
+	 * A cursor on a Prefix. Cursors are per query; the prefix is shared.
+	 */
+	private static class PrefixCursor implements PostingCursor {
+
+		private final Prefix prefix;
+		private int index = -1;
+
+		PrefixCursor(Prefix prefix) {
+			this.prefix = prefix;
+		}
+
+		public boolean next() {
+			return ++index < prefix.size;
+		}
+
+		public String document() {
+			return prefix.documents[index];
+		}
+
+		public int frequency() {
+			return prefix.frequencies[index];
+		}
+	}
+
+	/**
+	 * Searches an index for the top K documents of every query in a batch. The index must not
+	 * change while the batch runs, and must allow postings to be called from several threads.
+	 *
+	 * @param source Index to be searched
+	 * @param queries Queries, each a list of keywords in order of precedence (lower case)
+	 * @param k Maximum number of documents in each result
+	 * @param pool Pool that reads the occurrence lists and merges the queries
+	 * @return The result of each query, in the order of the queries: up to k documents in
+	 *         descending order of frequency, or null if none of its keywords is in the index
+	 */
+	public static ArrayList<ArrayList<String>> topK(final PostingSource source,
+			final List<? extends List<String>> queries, final int k, ForkJoinPool pool) {
+
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+
+		// distinct keywords of the batch
+		final HashMap<String,Prefix> prefixes = new HashMap<String,Prefix>();
+		for (List<String> query : queries) {
+			for (String keyword : query) {
+				if (!prefixes.containsKey(keyword)) {
+					prefixes.put(keyword, new Prefix());
+				}
+			}
+		}
+		final ArrayList<Map.Entry<String,Prefix>> keywords =
+				new ArrayList<Map.Entry<String,Prefix>>(prefixes.entrySet());
+
+		// read each list once; a keyword that is not in the index keeps a null prefix
+		run(pool, keywords.size(), new Step() {
+			public void run(int i) {
+				Map.Entry<String,Prefix> e = keywords.get(i);
+				PostingCursor cursor = source.postings(e.getKey());
+				if (cursor == null) {
+					e.setValue(null);
+					return;
+				}
+				Prefix p = e.getValue();
+				p.documents = new String[Math.min(k, 16)];
+				p.frequencies = new int[p.documents.length];
+				while (p.size < k && cursor.next()) {
+					if (p.size == p.documents.length) {
+						int capacity = Math.min(k, 2*p.size);
+						p.documents = Arrays.copyOf(p.documents, capacity);
+						p.frequencies = Arrays.copyOf(p.frequencies, capacity);
+					}
+					p.documents[p.size] = cursor.document();
+					p.frequencies[p.size] = cursor.frequency();
+					p.size++;
+				}
+			}
+		});
+
+		// merge each distinct query once over the shared prefixes
+		final ArrayList<List<String>> distinct = new ArrayList<List<String>>();
+		final int[] slots = new int[queries.size()];
+		HashMap<List<String>,Integer> seen = new HashMap<List<String>,Integer>();
+		for (int q=0; q < queries.size(); q++) {
+			Integer slot = seen.get(queries.get(q));
+			if (slot == null) {
+				slot = distinct.size();
+				distinct.add(queries.get(q));
+				seen.put(queries.get(q), slot);
+			}
+			slots[q] = slot;
+		}
+		final ArrayList<ArrayList<String>> merged =
+				new ArrayList<ArrayList<String>>(Collections.<ArrayList<String>>nCopies(distinct.size(), null));
+		run(pool, distinct.size(), new Step() {
+			public void run(int q) {
+				List<String> query = distinct.get(q);
+				PostingCursor[] cursors = new PostingCursor[query.size()];
+				for (int i=0; i < cursors.length; i++) {
+					Prefix p = prefixes.get(query.get(i));
+					cursors[i] = p == null ? null : new PrefixCursor(p);
+				}
+				merged.set(q, TopKMerger.topK(cursors, k));
+			}
+		});
+
+		// a repeated query gets a copy of the result, so results can be changed independently
+		ArrayList<ArrayList<String>> results = new ArrayList<ArrayList<String>>(queries.size());
+		boolean[] used = new boolean[distinct.size()];
+		for (int q=0; q < queries.size(); q++) {
+			ArrayList<String> result = merged.get(slots[q]);
+			if (result != null && used[slots[q]]) {
+				result = new ArrayList<String>(result);
+			}
+			used[slots[q]] = true;
+			results.add(result);
+		}
+		return results;
+	}
+
+	/**
+	 * Runs a step for indexes 0 to n-1 on a pool, or on the calling thread if the pool has
+	 * one thread or the range is too small to split, which saves handing the work over.
+	 */
+	private static void run(ForkJoinPool pool, int n, Step step) {
+		if (pool.getParallelism() <= 1 || n <= CHUNK) {
+			for (int i=0; i < n; i++) {
+				step.run(i);
+			}
+		}
+		else {
+			pool.invoke(new Chunks(step, 0, n));
+		}
+	}
+
+	/**
+	 * A step run for each index of a range.
+	 */
+	private interface Step {
+		void run(int i);
+	}
+
+	/**
+	 * A fork-join task that runs a step for every index in a range, splitting the range in
+	 * halves down to CHUNK indexes. Steps write to distinct slots, and invoke waits for all
+	 * of them, which makes their writes visible to the caller.
+	 */
+	private static class Chunks extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Step step;
+		private final int from, to;
+
+		Chunks(Step step, int from, int to) {
+			this.step = step;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= CHUNK) {
+				for (int i=from; i < to; i++) {
+					step.run(i);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Chunks(step, from, mid), new Chunks(step, mid, to));
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package lse;
+
+import java.util.Arrays;
+
+/**
+ * This class encodes occurrence lists in blocks of up to 128 (document id, frequency)
+ * pairs, bit-packed into an int array.
+ *
+ * Occurrence lists are in descending order of frequency, not in order of document id,
+ * so document ids are stored frame of reference: the smallest id of the block, then every
+ * id minus the smallest in as many bits as the largest difference needs. Frequencies only
+ * go down within a list, so they are stored as the first frequency of the block, then the
+ * drop from each frequency to the next, which is mostly 0 and takes few bits.
+ *
+ * A block is three header ints (smallest id, first frequency, and the bit widths and
+ * count), then the packed ids, then the packed drops. Unpacking is a plain counted loop
+ * with no branches in its body. An encoded array must have one
+ * spare int at the end, so that unpacking can always read a value's next word.
+ *
+ */
+class BlockCodec {
+
+	/**
+	 * Maximum number of pairs in a block.
+	 */
+	static final int BLOCK = 128;
+
+	/**
+	 * Number of header ints at the start of a block.
+	 */
+	private static final int HEADER = 3;
+
+	// prevent instantiation
+	private BlockCodec() { }
+
+	/**
+	 * Returns the most ints that a block of the given size can take.
+	 *
+	 * @param count Number of pairs
+	 * @return Maximum encoded size, in ints
+	 */
+	static int maxSize(int count) {
+		return HEADER + 2*count;
+	}
+
+	/**
+	 * Encodes one block.
+	 *
+	 * @param docIds Document ids (not negative)
+	 * @param freqs Frequencies, in descending order
+	 * @param from Index of the first pair of the block
+	 * @param count Number of pairs, from 1 to BLOCK
+	 * @param out Output array, zero from pos on, with at least maxSize(count) ints free
+	 * @param pos Position of the block in out
+	 * @return Position after the block
+	 */
+	static int encode(int[] docIds, int[] freqs, int from, int count, int[] out, int pos) {
+		int min = Integer.MAX_VALUE, max = 0, drop = 0;
+		for (int i=from; i < from+count; i++) {
+			min = Math.min(min, docIds[i]);
+			max = Math.max(max, docIds[i]);
+			if (i > from) {
+				drop = Math.max(drop, freqs[i-1] - freqs[i]);
+			}
+		}
+		int docBits = bits(max - min), freqBits = bits(drop);
+		out[pos++] = min;
+		out[pos++] = freqs[from];
+		out[pos++] = docBits | freqBits << 8 | (count-1) << 16;
+
+		for (int i=0; i < count; i++) {
+			pack(out, pos, docBits, i, docIds[from+i] - min);
+		}
+		pos += words(count, docBits);
+		for (int i=1; i < count; i++) {
+			pack(out, pos, freqBits, i, freqs[from+i-1] - freqs[from+i]);
+		}
+		return pos + words(count, freqBits);
+	}
+
+	/**
+	 * Returns the number of pairs in the block at pos.
+	 */
+	static int count(int[] data, int pos) {
+		return (data[pos+2] >>> 16) + 1;
+	}
+
+	/**
+	 * Decodes the block at pos.
+	 *
+	 * @param data Encoded blocks
+	 * @param pos Position of the block
+	 * @param docIds Filled with the document ids of the block
+	 * @param freqs Filled with the frequencies of the block
+	 * @return Position after the block
+	 */
+	static int decode(int[] data, int pos, int[] docIds, int[] freqs) {
+		int min = data[pos], first = data[pos+1], header = data[pos+2];
+		int docBits = header & 0xff, freqBits = (header >>> 8) & 0xff, count = (header >>> 16) + 1;
+		pos += HEADER;
+
+		unpack(data, pos, docBits, count, min, docIds);
+		pos += words(count, docBits);
+		unpack(data, pos, freqBits, count, 0, freqs);
+		pos += words(count, freqBits);
+
+		int f = first;
+		for (int i=0; i < count; i++) {
+			f -= freqs[i];
+			freqs[i] = f;
+		}
+		return pos;
+	}
+
+	/**
+	 * Reads the header of the block at pos.
+	 *
+	 * @param data Encoded blocks
+	 * @param pos Position of the block
+	 * @param header Filled with the smallest document id, the first frequency, the width of
+	 *        the ids, the width of the frequency drops, the number of pairs, the position of
+	 *        the packed ids, the position of the packed drops, and the position of the next block
+	 */
+	static void header(int[] data, int pos, int[] header) {
+		int widths = data[pos+2];
+		int docBits = widths & 0xff, freqBits = (widths >>> 8) & 0xff, count = (widths >>> 16) + 1;
+		header[0] = data[pos];
+		header[1] = data[pos+1];
+		header[2] = docBits;
+		header[3] = freqBits;
+		header[4] = count;
+		header[5] = pos + HEADER;
+		header[6] = header[5] + words(count, docBits);
+		header[7] = header[6] + words(count, freqBits);
+	}
+
+	/**
+	 * Reads value i of a run of packed values of the given width starting at pos.
+	 *
+	 * @param data Encoded blocks
+	 * @param pos Position of the packed values
+	 * @param bits Width of the values
+	 * @param i Index of the value
+	 * @return The value
+	 */
+	static int get(int[] data, int pos, int bits, int i) {
+		int bit = i*bits;
+		int word = pos + (bit >>> 5);
+		long pair = (data[word] & 0xffffffffL) | ((long)data[word+1] << 32);
+		return (int)((pair >>> (bit & 31)) & ((1L << bits) - 1));
+	}
+
+	/**
+	 * Number of bits needed for a value that is not negative.
+	 */
+	private static int bits(int value) {
+		return 32 - Integer.numberOfLeadingZeros(value);
+	}
+
+	/**
+	 * Number of ints taken by count values of the given width.
+	 */
+	private static int words(int count, int bits) {
+		return (int)(((long)count*bits + 31) >>> 5);
+	}
+
+	/**
+	 * Stores value i of a run of values of the given width starting at pos.
+	 */
+	private static void pack(int[] out, int pos, int bits, int i, int value) {
+		if (bits == 0) {
+			return;
+		}
+		long bit = (long)i*bits;
+		int word = pos + (int)(bit >>> 5), shift = (int)(bit & 31);
+		out[word] |= value << shift;
+		if (shift + bits > 32) {
+			out[word+1] |= value >>> (32 - shift);
+		}
+	}
+
+	/**
+	 * Reads count values of the given width starting at pos, and adds base to each.
+	 */
+	private static void unpack(int[] data, int pos, int bits, int count, int base, int[] out) {
+		if (bits == 0) {
+			Arrays.fill(out, 0, count, base);
+			return;
+		}
+		long mask = (1L << bits) - 1;
+		for (int i=0; i < count; i++) {
+			int bit = i*bits;
+			int word = pos + (bit >>> 5);
+			long pair = (data[word] & 0xffffffffL) | ((long)data[word+1] << 32);
+			out[i] = base + (int)((pair >>> (bit & 31)) & mask);
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package lse;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class ranks documents for a set of keywords by BM25: a keyword with frequency tf
+ * in a document of length dl (its total number of keyword occurrences) contributes
+ *
+ *     idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * dl / avgdl))
+ *
+ * where idf = ln(1 + (N - df + 0.5) / (df + 0.5)), N is the number of documents, df the
+ * number of documents the keyword occurs in, and avgdl the average document length.
+ *
+ * The first search for a keyword computes the highest score any of its occurrences can
+ * contribute, in one pass over its occurrence list, and the ranker keeps it for later
+ * searches; building a ranker takes constant time. A search then processes the keywords
+ * term at a time, those with the highest bounds first, accumulating scores (the MaxScore
+ * strategy). Once the
+ * bounds of the remaining keywords add up to less than the k-th best score so far, a
+ * document not seen yet cannot make the top k, so no new documents are admitted. And since
+ * occurrence lists are in descending order of frequency, the same test on the frequency
+ * at hand stops admitting new documents partway through a list.
+ *
+ * A ranker is a snapshot: it must be rebuilt when the index changes. Searches may run
+ * concurrently.
+ *
+ */
+public class Bm25Ranker {
+
+	/**
+	 * BM25 term frequency saturation and length normalization parameters.
+	 */
+	static final double K1 = 1.2, B = 0.75;
+
+	private final HashMap<String,ArrayList<Occurrence>> keywordsIndex;
+	private final HashMap<String,Integer> documentLengths;
+	private final int documentCount;
+	private final double averageLength;
+
+	/**
+	 * Bounds of the keywords searched for so far.
+	 */
+	private final ConcurrentHashMap<String,Bound> bounds;
+
+	/**
+	 * Bounds on the scores of the occurrences of a keyword.
+	 */
+	private static class Bound {
+
+		/**
+		 * Highest score that an occurrence of the keyword contributes.
+		 */
+		final double score;
+
+		/**
+		 * Length of the shortest document the keyword occurs in, which gives the highest
+		 * score for a frequency.
+		 */
+		final int minLength;
+
+		Bound(double score, int minLength) {
+			this.score = score;
+			this.minLength = minLength;
+		}
+	}
+
+	/**
+	 * Computes the statistics of an index.
+	 *
+	 * @param keywordsIndex Index of keywords
+	 * @param documentLengths Length of each document in the index
+	 * @param totalLength Sum of the lengths of all documents
+	 */
+	public Bm25Ranker(HashMap<String,ArrayList<Occurrence>> keywordsIndex,
+			HashMap<String,Integer> documentLengths, long totalLength) {
+		this.keywordsIndex = keywordsIndex;
+		this.documentLengths = documentLengths;
+		documentCount = documentLengths.size();
+		averageLength = documentCount == 0 ? 1 : (double)totalLength / documentCount;
+		bounds = new ConcurrentHashMap<String,Bound>();
+	}
+
+	/**
+	 * Returns the bounds of a keyword that is in the index, computing them on first use.
+	 * Racing searches compute equal bounds, either one will do.
+	 */
+	private Bound bound(String keyword) {
+		Bound bound = bounds.get(keyword);
+		if (bound == null) {
+			ArrayList<Occurrence> occs = keywordsIndex.get(keyword);
+			double idf = idf(occs.size());
+			double max = 0;
+			int min = Integer.MAX_VALUE;
+			for (Occurrence occ : occs) {
+				int length = length(occ.document);
+				max = Math.max(max, score(idf, occ.frequency, length));
+				min = Math.min(min, length);
+			}
+			bound = new Bound(max, min);
+			bounds.put(keyword, bound);
+		}
+		return bound;
+	}
+
+	/**
+	 * Inverse document frequency of a keyword.
+	 *
+	 * @param df Number of documents in which the keyword occurs
+	 * @return idf
+	 */
+	double idf(int df) {
+		return Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+	}
+
+	/**
+	 * Score of one keyword in one document.
+	 *
+	 * @param idf Inverse document frequency of the keyword
+	 * @param tf Frequency of the keyword in the document
+	 * @param length Length of the document
+	 * @return BM25 score
+	 */
+	double score(double idf, int tf, int length) {
+		return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+	}
+
+	private int length(String document) {
+		Integer length = documentLengths.get(document);
+		return length == null ? 1 : length;
+	}
+
+	/**
+	 * Finds the k documents with the highest BM25 scores for the keywords.
+	 *
+	 * @param keywords Keywords (lower case); repeats count once
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of score, ties broken by document name,
+	 *         or null if none of the keywords is in the index
+	 */
+	public ArrayList<String> search(List<String> keywords, int k) {
+
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+
+		ArrayList<String> terms = new ArrayList<String>();
+		for (String kw : new LinkedHashSet<String>(keywords)) {
+			if (keywordsIndex.containsKey(kw)) {
+				terms.add(kw);
+			}
+		}
+		if (terms.isEmpty()) {
+			return null;
+		}
+		final HashMap<String,Bound> termBounds = new HashMap<String,Bound>();
+		for (String term : terms) {
+			termBounds.put(term, bound(term));
+		}
+		Collections.sort(terms, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return Double.compare(termBounds.get(b).score, termBounds.get(a).score);
+			}
+		});
+
+		// remaining[i] = sum of the bounds of terms i and after
+		double[] remaining = new double[terms.size()+1];
+		for (int i=terms.size()-1; i >= 0; i--) {
+			remaining[i] = remaining[i+1] + termBounds.get(terms.get(i)).score;
+		}
+
+		HashMap<String,double[]> scores = new HashMap<String,double[]>();
+		double threshold = 0;
+		for (int t=0; t < terms.size(); t++) {
+			ArrayList<Occurrence> occs = keywordsIndex.get(terms.get(t));
+			double idf = idf(occs.size());
+			int minLength = termBounds.get(terms.get(t)).minLength;
+			boolean admit = scores.size() < k || remaining[t] >= threshold;
+			for (Occurrence occ : occs) {
+				double[] acc = scores.get(occ.document);
+				if (acc == null) {
+					if (!admit) {
+						continue;
+					}
+					// the best this and every later document in the list can do
+					if (scores.size() >= k && score(idf, occ.frequency, minLength) + remaining[t+1] < threshold) {
+						admit = false;
+						continue;
+					}
+					acc = new double[1];
+					scores.put(occ.document, acc);
+				}
+				acc[0] += score(idf, occ.frequency, length(occ.document));
+			}
+			threshold = kthLargest(scores, k);
+		}
+
+		ArrayList<Map.Entry<String,double[]>> ranked = new ArrayList<Map.Entry<String,double[]>>(scores.entrySet());
+		Collections.sort(ranked, new Comparator<Map.Entry<String,double[]>>() {
+			public int compare(Map.Entry<String,double[]> a, Map.Entry<String,double[]> b) {
+				int c = Double.compare(b.getValue()[0], a.getValue()[0]);
+				return c != 0 ? c : a.getKey().compareTo(b.getKey());
+			}
+		});
+		ArrayList<String> result = new ArrayList<String>(Math.min(k, ranked.size()));
+		for (int i=0; i < k && i < ranked.size(); i++) {
+			result.add(ranked.get(i).getKey());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the k-th largest accumulated score, or 0 if there are fewer than k.
+	 */
+	private static double kthLargest(HashMap<String,double[]> scores, int k) {
+		if (scores.size() < k) {
+			return 0;
+		}
+		PriorityQueue<Double> top = new PriorityQueue<Double>(k);
+		for (double[] acc : scores.values()) {
+			if (top.size() < k) {
+				top.add(acc[0]);
+			}
+			else if (acc[0] > top.peek()) {
+				top.poll();
+				top.add(acc[0]);
+			}
+		}
+		return top.peek();
+	}
+}
@@ -0,0 +1,334 @@
+package lse;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class indexes a set of documents too large for a keywordsIndex in memory, and
+ * writes the index straight to an index file that MappedIndex can search.
+ *
+ * Documents are scanned in the order in which they are listed, and their occurrences are
+ * collected in memory until an estimate of the memory they take reaches a budget. They
+ * are then written to a temporary run file, keywords in ascending order, and collection
+ * starts over. At the end, the runs are merged a keyword at a time through a priority
+ * queue, and each keyword's occurrences are sorted by frequency and written to the index
+ * file. So memory holds one run being collected, or one keyword's occurrences being
+ * merged, plus a read buffer per run.
+ *
+ * Occurrences with equal frequencies are written in the order of the documents list,
+ * rather than in the order insertLastOccurrence would leave them.
+ *
+ */
+public class BulkIndexBuilder {
+
+	/**
+	 * Estimated bytes taken by a keyword in a run being collected, besides its characters
+	 * and occurrences: the String, its hash table entry and the occurrence array.
+	 */
+	private static final int KEYWORD_OVERHEAD = 120;
+
+	private final long memoryBudget;
+	private final File tempDir;
+
+	/**
+	 * Collected occurrences of each keyword as (document id, frequency) pairs, and the
+	 * estimated memory they take.
+	 */
+	private HashMap<String,int[]> run;
+	private HashMap<String,Integer> runSizes;
+	private long runMemory;
+
+	/**
+	 * Run files written so far, in order.
+	 */
+	private ArrayList<File> runs;
+
+	/**
+	 * Creates a builder.
+	 *
+	 * @param memoryBudget Estimated number of bytes a run may take before it is written out
+	 * @param tempDir Directory for the run files, or null for the default temporary directory
+	 */
+	public BulkIndexBuilder(long memoryBudget, File tempDir) {
+		if (memoryBudget <= 0) {
+			throw new IllegalArgumentException("memoryBudget must be positive: " + memoryBudget);
+		}
+		this.memoryBudget = memoryBudget;
+		this.tempDir = tempDir;
+	}
+
+	/**
+	 * Indexes all the documents listed in a file into an index file. Document ids in the
+	 * index file are positions in the documents list.
+	 *
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @param indexFile Name of the index file to be written
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 * @throws IOException If a run file or the index file cannot be written
+	 */
+	public void build(String docsFile, String noiseWordsFile, String indexFile)
+	throws IOException {
+		LittleSearchEngine engine = new LittleSearchEngine();
+		engine.loadNoiseWords(noiseWordsFile);
+
+		ArrayList<String> docFiles = new ArrayList<String>();
+		Scanner sc = new Scanner(new File(docsFile));
+		while (sc.hasNext()) {
+			docFiles.add(sc.next());
+		}
+		sc.close();
+
+		run = new HashMap<String,int[]>();
+		runSizes = new HashMap<String,Integer>();
+		runMemory = 0;
+		runs = new ArrayList<File>();
+		try {
+			for (int docId=0; docId < docFiles.size(); docId++) {
+				HashMap<String,Occurrence> kws = engine.loadKeywordsFromDocument(docFiles.get(docId));
+				for (Map.Entry<String,Occurrence> e : kws.entrySet()) {
+					collect(e.getKey(), docId, e.getValue().frequency);
+				}
+				if (runMemory >= memoryBudget) {
+					writeRun();
+				}
+			}
+			if (!run.isEmpty()) {
+				writeRun();
+			}
+			run = null;
+			runSizes = null;
+			merge(docFiles.toArray(new String[docFiles.size()]), indexFile);
+		}
+		finally {
+			for (File f : runs) {
+				f.delete();
+			}
+			run = null;
+			runSizes = null;
+			runs = null;
+		}
+	}
+
+	/**
+	 * Adds an occurrence to the run being collected.
+	 */
+	private void collect(String keyword, int docId, int frequency) {
+		int[] pairs = run.get(keyword);
+		int size;
+		if (pairs == null) {
+			pairs = new int[8];
+			size = 0;
+			run.put(keyword, pairs);
+			runMemory += KEYWORD_OVERHEAD + 2L*keyword.length() + 4L*pairs.length;
+		}
+		else {
+			size = runSizes.get(keyword);
+			if (size == pairs.length) {
+				pairs = Arrays.copyOf(pairs, 2*size);
+				run.put(keyword, pairs);
+				runMemory += 4L*size;
+			}
+		}
+		pairs[size] = docId;
+		pairs[size+1] = frequency;
+		runSizes.put(keyword, size+2);
+	}
+
+	/**
+	 * Writes the run being collected to a new run file, and empties it. A run file holds,
+	 * for each keyword in ascending order of its UTF-8 bytes, a marker byte 1, the keyword,
+	 * the number of occurrences, and the occurrences as varint pairs of the gap from the
+	 * previous document id and the frequency; then a marker byte 0.
+	 */
+	private void writeRun()
+	throws IOException {
+		String[] keywords = run.keySet().toArray(new String[run.size()]);
+		final HashMap<String,byte[]> bytes = new HashMap<String,byte[]>(2*keywords.length);
+		for (String keyword : keywords) {
+			bytes.put(keyword, keyword.getBytes(StandardCharsets.UTF_8));
+		}
+		Arrays.sort(keywords, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return IndexFile.compare(bytes.get(a), bytes.get(b));
+			}
+		});
+
+		File f = File.createTempFile("run", ".tmp", tempDir);
+		runs.add(f);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+		try {
+			for (String keyword : keywords) {
+				int[] pairs = run.get(keyword);
+				int size = runSizes.get(keyword);
+				byte[] key = bytes.get(keyword);
+				out.writeByte(1);
+				writeVarint(out, key.length);
+				out.write(key);
+				writeVarint(out, size/2);
+				int prev = 0;
+				for (int i=0; i < size; i += 2) {
+					writeVarint(out, pairs[i] - prev);
+					writeVarint(out, pairs[i+1]);
+					prev = pairs[i];
+				}
+			}
+			out.writeByte(0);
+		}
+		finally {
+			out.close();
+		}
+		run.clear();
+		runSizes.clear();
+		runMemory = 0;
+	}
+
+	/**
+	 * Reads a run file one keyword at a time.
+	 */
+	private static class RunReader {
+
+		final int order;
+		final DataInputStream in;
+
+		/**
+		 * Current keyword, as UTF-8 bytes, or null at the end of the run.
+		 */
+		byte[] key;
+
+		RunReader(File f, int order)
+		throws IOException {
+			this.order = order;
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+			try {
+				advance();
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Reads the next keyword, leaving its occurrences to be read by readOccurrences.
+		 */
+		void advance()
+		throws IOException {
+			if (in.readByte() == 0) {
+				key = null;
+				in.close();
+				return;
+			}
+			key = new byte[readVarint(in)];
+			in.readFully(key);
+		}
+
+		/**
+		 * Reads the occurrences of the current keyword, appending them to entries as
+		 * packed keys that sort by descending frequency and then ascending document id.
+		 *
+		 * @return entries, grown if needed
+		 */
+		long[] readOccurrences(long[] entries, int[] size)
+		throws IOException {
+			int count = readVarint(in);
+			if (size[0] + count > entries.length) {
+				entries = Arrays.copyOf(entries, Math.max(2*entries.length, size[0] + count));
+			}
+			int docId = 0;
+			for (int i=0; i < count; i++) {
+				docId += readVarint(in);
+				int freq = readVarint(in);
+				entries[size[0]++] = ((long)(Integer.MAX_VALUE - freq) << 32) | docId;
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Merges the run files into an index file.
+	 */
+	private void merge(String[] documents, String indexFile)
+	throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, runs.size()),
+				new Comparator<RunReader>() {
+					public int compare(RunReader a, RunReader b) {
+						int c = IndexFile.compare(a.key, b.key);
+						return c != 0 ? c : a.order - b.order;
+					}
+				});
+		ArrayList<RunReader> readers = new ArrayList<RunReader>();
+		IndexFile writer = new IndexFile(indexFile, documents);
+		try {
+			for (int i=0; i < runs.size(); i++) {
+				RunReader reader = new RunReader(runs.get(i), i);
+				readers.add(reader);
+				if (reader.key != null) {
+					queue.add(reader);
+				}
+			}
+
+			long[] entries = new long[1024];
+			int[] size = new int[1];
+			int[] docIds = new int[0], freqs = new int[0];
+			while (!queue.isEmpty()) {
+				byte[] key = queue.peek().key;
+				size[0] = 0;
+				while (!queue.isEmpty() && IndexFile.compare(queue.peek().key, key) == 0) {
+					RunReader reader = queue.poll();
+					entries = reader.readOccurrences(entries, size);
+					reader.advance();
+					if (reader.key != null) {
+						queue.add(reader);
+					}
+				}
+
+				int n = size[0];
+				Arrays.sort(entries, 0, n);
+				if (docIds.length < n) {
+					docIds = new int[entries.length];
+					freqs = new int[entries.length];
+				}
+				for (int i=0; i < n; i++) {
+					docIds[i] = (int)entries[i];
+					freqs[i] = Integer.MAX_VALUE - (int)(entries[i] >>> 32);
+				}
+				writer.add(new String(key, StandardCharsets.UTF_8), docIds, freqs, n);
+			}
+			writer.close();
+		} catch (IOException e) {
+			// a partial index would open as a valid one with keywords missing
+			writer.abort();
+			throw e;
+		} catch (RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		finally {
+			for (RunReader reader : readers) {
+				reader.in.close();
+			}
+		}
+	}
+
+	private static void writeVarint(DataOutputStream out, int value)
+	throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarint(DataInputStream in)
+	throws IOException {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.readByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package lse;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class is a memory-lean version of the keywordsIndex hash table. Document names
+ * are interned once and given int ids, and the occurrences of each keyword are packed
+ * into a single long array, each entry holding a frequency in its high 32 bits and a
+ * document id in its low 32 bits. That is 8 bytes per occurrence, instead of an
+ * Occurrence object and an array list slot.
+ *
+ * The occurrences of each keyword are kept in descending order of frequency, inserted
+ * with the same binary search as LittleSearchEngine.insertLastOccurrence, so a compact
+ * index built from the same documents lists occurrences in the same order. The
+ * occurrences of a keyword can still be read as Occurrence objects through a view.
+ *
+ * A compact index answers top5search and topKSearch only. It is not the store behind a
+ * LittleSearchEngine, whose ranked, wildcard and boolean searches, updates and shards all
+ * work on Occurrence lists: it is built from an engine with LittleSearchEngine.compactIndex,
+ * or from the documents with build, and then serves searches in place of the engine.
+ *
+ */
+public class CompactIndex implements PostingSource {
+
+	/**
+	 * The occurrences of one keyword.
+	 */
+	static class Postings {
+
+		/**
+		 * Packed (frequency, document id) entries; only the first size are in use.
+		 */
+		long[] entries;
+
+		int size;
+
+		Postings(int capacity) {
+			entries = new long[capacity];
+		}
+	}
+
+	/**
+	 * Document names, indexed by document id.
+	 */
+	ArrayList<String> documents;
+
+	/**
+	 * Document id of each document name.
+	 */
+	HashMap<String,Integer> docIds;
+
+	/**
+	 * Occurrences of each keyword.
+	 */
+	HashMap<String,Postings> postings;
+
+	/**
+	 * Creates an empty index.
+	 */
+	public CompactIndex() {
+		documents = new ArrayList<String>();
+		docIds = new HashMap<String,Integer>();
+		postings = new HashMap<String,Postings>(1000, 2.0f);
+	}
+
+	/**
+	 * Packs a frequency and a document id into a postings entry.
+	 */
+	static long pack(int frequency, int docId) {
+		return ((long)frequency << 32) | (docId & 0xffffffffL);
+	}
+
+	static int frequency(long entry) {
+		return (int)(entry >>> 32);
+	}
+
+	static int docId(long entry) {
+		return (int)entry;
+	}
+
+	/**
+	 * Creates a compact copy of a keywordsIndex hash table. Occurrences keep their order.
+	 *
+	 * @param keywordsIndex Index to be copied
+	 * @return Compact index with the same occurrences
+	 */
+	public static CompactIndex from(HashMap<String,ArrayList<Occurrence>> keywordsIndex) {
+		CompactIndex index = new CompactIndex();
+		for (String keyword : keywordsIndex.keySet()) {
+			ArrayList<Occurrence> occs = keywordsIndex.get(keyword);
+			Postings p = new Postings(occs.size());
+			for (Occurrence occ : occs) {
+				p.entries[p.size++] = pack(occ.frequency, index.intern(occ.document));
+			}
+			index.postings.put(keyword, p);
+		}
+		return index;
+	}
+
+	/**
+	 * Indexes all the documents listed in a file directly into a compact index, without
+	 * building a keywordsIndex. The noise words of the engine must already be loaded.
+	 *
+	 * @param engine Engine used to scan the documents
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @return Compact index of the documents
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 */
+	public static CompactIndex build(LittleSearchEngine engine, String docsFile)
+	throws FileNotFoundException {
+		CompactIndex index = new CompactIndex();
+		Scanner sc = new Scanner(new File(docsFile));
+		while (sc.hasNext()) {
+			String docFile = sc.next();
+			index.addDocument(docFile, engine.loadKeywordsFromDocument(docFile));
+		}
+		sc.close();
+		index.trim();
+		return index;
+	}
+
+	/**
+	 * Returns the id of a document, giving it the next id if it has none yet.
+	 *
+	 * @param document Document name
+	 * @return Document id
+	 */
+	int intern(String document) {
+		Integer id = docIds.get(document);
+		if (id == null) {
+			id = documents.size();
+			documents.add(document);
+			docIds.put(document, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Merges the keywords of a document into the index, like mergeKeywords.
+	 *
+	 * @param docFile Document name
+	 * @param kws Keywords hash table for the document
+	 */
+	public void addDocument(String docFile, HashMap<String,Occurrence> kws) {
+		int docId = intern(docFile);
+		for (String key : kws.keySet()) {
+			Postings p = postings.get(key);
+			if (p == null) {
+				p = new Postings(4);
+				postings.put(key, p);
+			}
+			else if (p.size == p.entries.length) {
+				p.entries = Arrays.copyOf(p.entries, 2*p.size);
+			}
+			p.entries[p.size++] = pack(kws.get(key).frequency, docId);
+			insertLast(p.entries, p.size);
+		}
+	}
+
+	/**
+	 * Moves the last of the first n entries to its place in descending order of frequency,
+	 * exactly as insertLastOccurrence does for an Occurrence list.
+	 *
+	 * @param entries Postings entries, of which 0..n-2 are in order
+	 * @param n Number of entries in use
+	 */
+	static void insertLast(long[] entries, int n) {
+		if (n == 1) {
+			return;
+		}
+		long last = entries[n-1];
+		int freq = frequency(last);
+		int lo = 0, hi = n-2, mid = 0;
+		while (lo <= hi) {
+			mid = (lo + hi)/2;
+			int f = frequency(entries[mid]);
+			if (f == freq) {
+				mid++;
+				break;
+			}
+			else if (f < freq) {
+				hi = mid-1;
+			}
+			else {
+				lo = mid+1;
+				if (hi <= mid) {
+					mid++;
+				}
+			}
+		}
+		System.arraycopy(entries, mid, entries, mid+1, n-1-mid);
+		entries[mid] = last;
+	}
+
+	/**
+	 * Shrinks every postings array to its size.
+	 */
+	public void trim() {
+		for (Postings p : postings.values()) {
+			if (p.entries.length != p.size) {
+				p.entries = Arrays.copyOf(p.entries, p.size);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of keywords in the index.
+	 *
+	 * @return Number of keywords
+	 */
+	public int size() {
+		return postings.size();
+	}
+
+	/**
+	 * Returns the name of a document.
+	 *
+	 * @param docId Document id
+	 * @return Document name
+	 */
+	public String document(int docId) {
+		return documents.get(docId);
+	}
+
+	/**
+	 * Returns the occurrences of a keyword as a read-only list of Occurrence objects,
+	 * in descending order of frequency. The objects are created as they are read, so
+	 * the same element read twice is not the same object.
+	 *
+	 * @param keyword Keyword (lower case)
+	 * @return View of the occurrences of the keyword, or null if it is not in the index
+	 */
+	public List<Occurrence> occurrences(String keyword) {
+		final Postings p = postings.get(keyword);
+		if (p == null) {
+			return null;
+		}
+		return new AbstractList<Occurrence>() {
+			public Occurrence get(int i) {
+				if (i >= p.size) {
+					throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + p.size);
+				}
+				return new Occurrence(documents.get(docId(p.entries[i])), frequency(p.entries[i]));
+			}
+			public int size() {
+				return p.size;
+			}
+		};
+	}
+
+	/**
+	 * Search result for "kw1 or kw2", with the same result as LittleSearchEngine.top5search
+	 * on the same documents.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return List of documents in which either kw1 or kw2 occurs, arranged in descending order of
+	 *         frequencies. The result size is limited to 5 documents. If there are no matches,
+	 *         returns null.
+	 */
+	public ArrayList<String> top5search(String kw1, String kw2) {
+		return topKSearch(Arrays.asList(kw1, kw2), 5);
+	}
+
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwN", with the same result as 
+	 * LittleSearchEngine.topKSearch on the same documents.
+	 *
+	 * @param keywords Keywords to search for, in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of frequency, or null if there are no matches
+	 */
+	public ArrayList<String> topKSearch(List<String> keywords, int k) {
+		ArrayList<String> kws = new ArrayList<String>(keywords.size());
+		for (String kw : keywords) {
+			kws.add(kw.toLowerCase());
+		}
+		return TopKMerger.topK(this, kws, k);
+	}
+
+	/* (non-Javadoc)
+	 * @see lse.PostingSource#postings(java.lang.String)
+	 */
+	public PostingCursor postings(String keyword) {
+		final Postings p = postings.get(keyword);
+		if (p == null) {
+			return null;
+		}
+		return new PostingCursor() {
+			int index = -1;
+			public boolean next() {
+				return ++index < p.size;
+			}
+			public String document() {
+				return documents.get(docId(p.entries[index]));
+			}
+			public int frequency() {
+				return CompactIndex.frequency(p.entries[index]);
+			}
+		};
+	}
+}
@@ -0,0 +1,223 @@
+package lse;
+
+import java.util.*;
+
+/**
+ * This class is a read-only index whose occurrence lists are compressed by BlockCodec into
+ * one int array, for indexes that must fit in a small amount of memory. A list of n
+ * occurrences takes 3 ints per 128 occurrences, plus as many bits per occurrence as the
+ * spread of document ids and the drops in frequency in its blocks need, instead of an
+ * Occurrence object and an array list slot each.
+ *
+ * Occurrences keep the order of the index they were copied from, so searches give the
+ * same results. A search reads a list through a cursor that decodes an occurrence only
+ * when TopKMerger reaches it, so a top-k search decodes little more than k occurrences
+ * of each list.
+ *
+ */
+public class CompressedIndex implements PostingSource {
+
+	/**
+	 * Document names, indexed by document id.
+	 */
+	private final String[] documents;
+
+	/**
+	 * Index of each keyword in offsets and counts.
+	 */
+	private final HashMap<String,Integer> keywords;
+
+	/**
+	 * Position of the first block of each keyword in data, and its number of occurrences.
+	 */
+	private final int[] offsets, counts;
+
+	/**
+	 * Encoded blocks of all the keywords, followed by one spare int.
+	 */
+	private final int[] data;
+
+	private CompressedIndex(String[] documents, HashMap<String,Integer> keywords,
+			int[] offsets, int[] counts, int[] data) {
+		this.documents = documents;
+		this.keywords = keywords;
+		this.offsets = offsets;
+		this.counts = counts;
+		this.data = data;
+	}
+
+	/**
+	 * Compresses a compact index. Occurrences keep their order and document ids.
+	 *
+	 * @param index Index to be compressed
+	 * @return Compressed index with the same occurrences
+	 */
+	public static CompressedIndex from(CompactIndex index) {
+		int n = index.postings.size();
+		HashMap<String,Integer> keywords = new HashMap<String,Integer>(2*n);
+		int[] offsets = new int[n], counts = new int[n];
+		int[] data = new int[1024];
+		int pos = 0;
+
+		int[] docIds = new int[BlockCodec.BLOCK], freqs = new int[BlockCodec.BLOCK];
+		int k = 0;
+		for (Map.Entry<String,CompactIndex.Postings> e : index.postings.entrySet()) {
+			CompactIndex.Postings p = e.getValue();
+			keywords.put(e.getKey(), k);
+			offsets[k] = pos;
+			counts[k] = p.size;
+			for (int from=0; from < p.size; from += BlockCodec.BLOCK) {
+				int count = Math.min(BlockCodec.BLOCK, p.size - from);
+				for (int i=0; i < count; i++) {
+					docIds[i] = CompactIndex.docId(p.entries[from+i]);
+					freqs[i] = CompactIndex.frequency(p.entries[from+i]);
+				}
+				if (pos + BlockCodec.maxSize(count) + 1 > data.length) {
+					data = Arrays.copyOf(data, Math.max(2*data.length, pos + BlockCodec.maxSize(count) + 1));
+				}
+				pos = BlockCodec.encode(docIds, freqs, 0, count, data, pos);
+			}
+			k++;
+		}
+		return new CompressedIndex(index.documents.toArray(new String[0]), keywords,
+				offsets, counts, Arrays.copyOf(data, pos+1));
+	}
+
+	/**
+	 * Returns the number of keywords in the index.
+	 *
+	 * @return Number of keywords
+	 */
+	public int size() {
+		return counts.length;
+	}
+
+	/**
+	 * Returns the number of bytes taken by the encoded occurrences and the per-keyword
+	 * offsets and counts, not counting the keyword strings and document names.
+	 *
+	 * @return Size of the encoded index, in bytes
+	 */
+	public long encodedSize() {
+		return 4L*data.length + 8L*counts.length;
+	}
+
+	/**
+	 * Decodes all the occurrences of a keyword, a whole block at a time.
+	 *
+	 * @param keyword Keyword (lower case)
+	 * @return Occurrences of the keyword in descending order of frequency, or null if it is
+	 *         not in the index
+	 */
+	public ArrayList<Occurrence> occurrences(String keyword) {
+		Integer k = keywords.get(keyword);
+		if (k == null) {
+			return null;
+		}
+		ArrayList<Occurrence> occs = new ArrayList<Occurrence>(counts[k]);
+		int[] docIds = new int[BlockCodec.BLOCK], freqs = new int[BlockCodec.BLOCK];
+		for (int pos = offsets[k], remaining = counts[k]; remaining > 0; ) {
+			int count = BlockCodec.count(data, pos);
+			pos = BlockCodec.decode(data, pos, docIds, freqs);
+			for (int i=0; i < count; i++) {
+				occs.add(new Occurrence(documents[docIds[i]], freqs[i]));
+			}
+			remaining -= count;
+		}
+		return occs;
+	}
+
+	/**
+	 * Search result for "kw1 or kw2", with the same result as the index it was compressed from.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return List of documents in which either kw1 or kw2 occurs, arranged in descending order of
+	 *         frequencies. The result size is limited to 5 documents. If there are no matches,
+	 *         returns null.
+	 */
+	public ArrayList<String> top5search(String kw1, String kw2) {
+		return topKSearch(Arrays.asList(kw1, kw2), 5);
+	}
+
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwN", with the same result as the index it was
+	 * compressed from.
+	 *
+	 * @param keywords Keywords to search for, in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of frequency, or null if there are no matches
+	 */
+	public ArrayList<String> topKSearch(List<String> keywords, int k) {
+		ArrayList<String> kws = new ArrayList<String>(keywords.size());
+		for (String kw : keywords) {
+			kws.add(kw.toLowerCase());
+		}
+		return TopKMerger.topK(this, kws, k);
+	}
+
+	/* (non-Javadoc)
+	 * @see lse.PostingSource#postings(java.lang.String)
+	 */
+	public PostingCursor postings(String keyword) {
+		Integer k = keywords.get(keyword);
+		return k == null ? null : new BlockCursor(offsets[k], counts[k]);
+	}
+
+	/**
+	 * A cursor that reads a keyword's occurrences straight from the encoded blocks, one
+	 * occurrence at a time, so that a search that stops after a few occurrences decodes
+	 * only those. Cursors that decoded a block, or runs of a block, into buffers were tried
+	 * and measured slower: top-k searches read a few occurrences of each list, and paid for
+	 * the buffers and the values they never read, while full scans were no faster.
+	 */
+	private class BlockCursor implements PostingCursor {
+
+		/**
+		 * Header of the current block, as filled in by BlockCodec.header.
+		 */
+		private final int[] header = new int[8];
+
+		/**
+		 * Position of the next block in data, and the occurrences in blocks after the current one.
+		 */
+		private int pos, remaining;
+
+		/**
+		 * Index of the current occurrence in its block, and its document id and frequency.
+		 */
+		private int index, docId, freq;
+
+		BlockCursor(int pos, int count) {
+			this.pos = pos;
+			remaining = count;
+		}
+
+		public boolean next() {
+			if (++index >= header[4]) {
+				if (remaining == 0) {
+					index = header[4];
+					return false;
+				}
+				BlockCodec.header(data, pos, header);
+				pos = header[7];
+				remaining -= header[4];
+				index = 0;
+				freq = header[1];
+			}
+			else {
+				freq -= BlockCodec.get(data, header[6], header[3], index);
+			}
+			docId = header[0] + BlockCodec.get(data, header[5], header[2], index);
+			return true;
+		}
+
+		public String document() {
+			return documents[docId];
+		}
+
+		public int frequency() {
+			return freq;
+		}
+	}
+}
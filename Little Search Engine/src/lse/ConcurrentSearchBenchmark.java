@@ -0,0 +1,111 @@
+package lse;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Measures the query throughput of a ConcurrentSearchEngine with 1, 2, 4, ... reader threads,
+ * up to the number of available processors, while one writer thread keeps re-adding documents.
+ * Each re-add copies part of the index, as described in ConcurrentSearchEngine, so the number
+ * of updates per run falls as the index grows.
+ *
+ * Usage: java lse.ConcurrentSearchBenchmark docsFile noiseWordsFile [secondsPerRun]
+ *
+ */
+public class ConcurrentSearchBenchmark {
+
+	public static void main(String[] args)
+	throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: java lse.ConcurrentSearchBenchmark docsFile noiseWordsFile [secondsPerRun]");
+			return;
+		}
+		final long millis = 1000L * (args.length > 2 ? Integer.parseInt(args[2]) : 3);
+
+		final ConcurrentSearchEngine engine = new ConcurrentSearchEngine();
+		engine.makeIndex(args[0], args[1], Runtime.getRuntime().availableProcessors());
+		final ArrayList<String> docs = engine.snapshot().documentKeywords.keys();
+		final String[] keywords = engine.snapshot().keywordsIndex.keys().toArray(new String[0]);
+		if (keywords.length == 0) {
+			System.err.println("Nothing to search: the index is empty");
+			return;
+		}
+
+		System.out.println("threads\tqueries/s\tupdates");
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads=1; ; threads *= 2) {
+			threads = Math.min(threads, cores);
+			run(engine, docs, keywords, threads, millis);
+			if (threads == cores) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Runs the readers and the writer for the given time, and prints the throughput.
+	 */
+	private static void run(final ConcurrentSearchEngine engine, final ArrayList<String> docs,
+			final String[] keywords, int threads, final long millis)
+	throws InterruptedException {
+		final AtomicBoolean stop = new AtomicBoolean();
+		final LongAdder queries = new LongAdder();
+		final AtomicLong updates = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		Thread writer = new Thread() {
+			public void run() {
+				Random random = new Random(-1);
+				try {
+					start.await();
+					while (!stop.get() && !docs.isEmpty()) {
+						engine.addDocument(docs.get(random.nextInt(docs.size())));
+						updates.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					// stop
+				} catch (FileNotFoundException e) {
+					System.err.println(e.getMessage());
+				}
+			}
+		};
+		Thread[] readers = new Thread[threads];
+		for (int t=0; t < threads; t++) {
+			final long seed = t;
+			readers[t] = new Thread() {
+				public void run() {
+					Random random = new Random(seed);
+					long n = 0;
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while (!stop.get()) {
+						engine.top5search(keywords[random.nextInt(keywords.length)],
+								keywords[random.nextInt(keywords.length)]);
+						n++;
+					}
+					queries.add(n);
+				}
+			};
+		}
+
+		writer.start();
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep(millis);
+		stop.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		long elapsed = System.nanoTime() - begin;
+		writer.join();
+		System.out.printf("%d\t%.0f\t\t%d%n", threads, queries.sum() * 1e9 / elapsed, updates.get());
+	}
+}
@@ -0,0 +1,251 @@
+package lse;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class serves searches from many threads without locks, while documents are added
+ * and removed.
+ *
+ * The index is held in an immutable snapshot, published through a volatile field. A search
+ * reads the field once and works on that snapshot to the end, so it never waits and never
+ * sees a change partway. The snapshot's tables are StripedMaps: a change copies the array of
+ * stripes and the stripes of only the keywords and documents it touches, replaces the
+ * occurrence arrays of those keywords (all else is shared with the old snapshot), and
+ * publishes the new snapshot with a single write. A change of a document with k keywords in
+ * an index of n keywords thus copies about n/16 references, 16k hash table entries, and the
+ * whole occurrence array of each of the k keywords, instead of the whole index. The first
+ * part is still linear in n, so changes to large indexes are best batched.
+ *
+ * Occurrence objects are never modified once they are in a snapshot. Changes are serialized
+ * among themselves; a batch of documents can be changed in one copy with addDocuments.
+ *
+ * Occurrences are inserted with insertLastOccurrence, so the order of each keyword's
+ * occurrences is the same as in a LittleSearchEngine that merged the same documents.
+ *
+ */
+public class ConcurrentSearchEngine {
+
+	/**
+	 * An immutable version of the index.
+	 */
+	static class Snapshot implements PostingSource {
+
+		/**
+		 * Occurrences of each keyword, in descending order of frequency.
+		 */
+		final StripedMap<Occurrence[]> keywordsIndex;
+
+		/**
+		 * Keywords hash table of each document in the index.
+		 */
+		final StripedMap<HashMap<String,Occurrence>> documentKeywords;
+
+		Snapshot(StripedMap<Occurrence[]> keywordsIndex,
+				StripedMap<HashMap<String,Occurrence>> documentKeywords) {
+			this.keywordsIndex = keywordsIndex;
+			this.documentKeywords = documentKeywords;
+		}
+
+		/* (non-Javadoc)
+		 * @see lse.PostingSource#postings(java.lang.String)
+		 */
+		public PostingCursor postings(String keyword) {
+			Occurrence[] occs = keywordsIndex.get(keyword);
+			return occs == null ? null : new OccurrenceCursor(Arrays.asList(occs));
+		}
+	}
+
+	/**
+	 * Engine used to scan documents, with its noise words. Its own index is not used. Its noise
+	 * words are loaded before it is published here, and never changed after: makeIndex publishes
+	 * a new engine instead, so scans running outside the lock never see a set being filled.
+	 */
+	private volatile LittleSearchEngine scanner;
+
+	/**
+	 * The current snapshot.
+	 */
+	private volatile Snapshot current;
+
+	/**
+	 * Creates an empty engine.
+	 */
+	public ConcurrentSearchEngine() {
+		scanner = new LittleSearchEngine();
+		current = new Snapshot(new StripedMap<Occurrence[]>(), new StripedMap<HashMap<String,Occurrence>>());
+	}
+
+	/**
+	 * Indexes all the documents listed in a file, replacing the current index. The documents
+	 * are indexed by a LittleSearchEngine (in parallel if threads is more than 1), and the result
+	 * is then published as one snapshot.
+	 *
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @param threads Number of indexing threads
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 */
+	public synchronized void makeIndex(String docsFile, String noiseWordsFile, int threads)
+	throws FileNotFoundException {
+		LittleSearchEngine engine = new LittleSearchEngine();
+		engine.makeIndex(docsFile, noiseWordsFile, threads);
+		LittleSearchEngine newScanner = new LittleSearchEngine();
+		newScanner.loadNoiseWords(noiseWordsFile);
+
+		HashMap<String,Occurrence[]> index = new HashMap<String,Occurrence[]>(2*engine.keywordsIndex.size());
+		for (String keyword : engine.keywordsIndex.keySet()) {
+			index.put(keyword, engine.keywordsIndex.get(keyword).toArray(new Occurrence[0]));
+		}
+		scanner = newScanner;
+		current = new Snapshot(new StripedMap<Occurrence[]>(index),
+				new StripedMap<HashMap<String,Occurrence>>(engine.documentKeywords));
+	}
+
+	/**
+	 * Adds a document, or replaces it if it is already in the index.
+	 *
+	 * @param docFile Name of the document file
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 */
+	public void addDocument(String docFile)
+	throws FileNotFoundException {
+		addDocuments(Collections.singletonList(docFile));
+	}
+
+	/**
+	 * Adds (or replaces) several documents, publishing them all in one snapshot. The documents
+	 * are scanned before anything is copied, and scanned again if makeIndex changed the noise
+	 * words meanwhile.
+	 *
+	 * @param docFiles Names of the document files
+	 * @throws FileNotFoundException If a document file is not found on disk
+	 */
+	public void addDocuments(List<String> docFiles)
+	throws FileNotFoundException {
+		LittleSearchEngine scanner = this.scanner;
+		ArrayList<HashMap<String,Occurrence>> scanned = scan(scanner, docFiles);
+		synchronized (this) {
+			if (scanner != this.scanner) {
+				scanner = this.scanner;
+				scanned = scan(scanner, docFiles);
+			}
+			Snapshot old = current;
+			StripedMap<Occurrence[]>.Editor index = old.keywordsIndex.edit();
+			StripedMap<HashMap<String,Occurrence>>.Editor docs = old.documentKeywords.edit();
+			for (int i=0; i < docFiles.size(); i++) {
+				remove(index, docs, docFiles.get(i));
+				HashMap<String,Occurrence> kws = scanned.get(i);
+				for (String key : kws.keySet()) {
+					Occurrence[] occs = index.get(key);
+					ArrayList<Occurrence> list = new ArrayList<Occurrence>(occs == null ? 1 : occs.length+1);
+					if (occs != null) {
+						list.addAll(Arrays.asList(occs));
+					}
+					list.add(kws.get(key));
+					scanner.insertLastOccurrence(list);
+					index.put(key, list.toArray(new Occurrence[list.size()]));
+				}
+				docs.put(docFiles.get(i), kws);
+			}
+			current = new Snapshot(index.done(), docs.done());
+		}
+	}
+
+	private static ArrayList<HashMap<String,Occurrence>> scan(LittleSearchEngine scanner, List<String> docFiles)
+	throws FileNotFoundException {
+		ArrayList<HashMap<String,Occurrence>> scanned = new ArrayList<HashMap<String,Occurrence>>(docFiles.size());
+		for (String docFile : docFiles) {
+			scanned.add(scanner.loadKeywordsFromDocument(docFile));
+		}
+		return scanned;
+	}
+
+	/**
+	 * Removes a document from the index.
+	 *
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the index, false otherwise
+	 */
+	public synchronized boolean removeDocument(String docFile) {
+		Snapshot old = current;
+		if (!old.documentKeywords.containsKey(docFile)) {
+			return false;
+		}
+		StripedMap<Occurrence[]>.Editor index = old.keywordsIndex.edit();
+		StripedMap<HashMap<String,Occurrence>>.Editor docs = old.documentKeywords.edit();
+		remove(index, docs, docFile);
+		current = new Snapshot(index.done(), docs.done());
+		return true;
+	}
+
+	/**
+	 * Removes a document from the editors of the tables of a snapshot, replacing the occurrence
+	 * arrays it is in with new arrays.
+	 */
+	private static void remove(StripedMap<Occurrence[]>.Editor index,
+			StripedMap<HashMap<String,Occurrence>>.Editor docs, String docFile) {
+		HashMap<String,Occurrence> kws = docs.remove(docFile);
+		if (kws == null) {
+			return;
+		}
+		for (String key : kws.keySet()) {
+			Occurrence[] occs = index.get(key);
+			if (occs == null) {
+				continue;
+			}
+			Occurrence occ = kws.get(key);
+			for (int i=0; i < occs.length; i++) {
+				if (occs[i] == occ) {
+					if (occs.length == 1) {
+						index.remove(key);
+					}
+					else {
+						Occurrence[] fewer = new Occurrence[occs.length-1];
+						System.arraycopy(occs, 0, fewer, 0, i);
+						System.arraycopy(occs, i+1, fewer, i, occs.length-1-i);
+						index.put(key, fewer);
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Search result for "kw1 or kw2", as described in LittleSearchEngine.top5search.
+	 * Never blocks.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return Up to 5 documents in descending order of frequency, or null if there are no matches
+	 */
+	public ArrayList<String> top5search(String kw1, String kw2) {
+		return topKSearch(Arrays.asList(kw1, kw2), 5);
+	}
+
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwN", as described in LittleSearchEngine.topKSearch.
+	 * Never blocks.
+	 *
+	 * @param keywords Keywords to search for, in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of frequency, or null if there are no matches
+	 */
+	public ArrayList<String> topKSearch(List<String> keywords, int k) {
+		ArrayList<String> kws = new ArrayList<String>(keywords.size());
+		for (String kw : keywords) {
+			kws.add(kw.toLowerCase());
+		}
+		return TopKMerger.topK(current, kws, k);
+	}
+
+	/**
+	 * Returns the current snapshot of the index, which will not change.
+	 *
+	 * @return Current snapshot
+	 */
+	Snapshot snapshot() {
+		return current;
+	}
+}
@@ -13,11 +13,19 @@ import java.util.Scanner;
 public class Driver {
 
 	/**
-	 * @param args
+	 * @param args Optional name of an index file saved by a previous run, which is opened
+	 *        with MappedIndex and searched without indexing the documents again
 	 * @throws IOException 
 	 */
 	public static void main(String[] args) throws IOException {
 		
+		if (args.length > 0) {
+			MappedIndex index = new MappedIndex(args[0]);
+			System.out.println(index.size() + " keywords in " + args[0]);
+			System.out.println(index.top5search("wild","simply"));
+			return;
+		}
+		
 		LittleSearchEngine engine = new LittleSearchEngine();
 		
 		BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
@@ -28,6 +36,12 @@ public class Driver {
 		
 		engine.makeIndex(docFile, noiseWordsFile);
 		
+		System.out.print("Enter index file name to save the index, or nothing => ");
+		String indexFile = br.readLine();
+		if (indexFile != null && indexFile.trim().length() > 0) {
+			engine.saveIndex(indexFile.trim());
+		}
+		
 //		System.out.println(engine.getKeyword("reading..?")); 
 		
 //		ArrayList<Occurrence> o = new ArrayList<Occurrence>();
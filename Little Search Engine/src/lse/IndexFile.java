@@ -0,0 +1,344 @@
+package lse;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class writes a keyword index to disk in a compact binary format, which
+ * MappedIndex can open and search without loading it into memory.
+ *
+ * The file is laid out as follows (all fixed size numbers are big-endian):
+ *
+ * header:   magic (int), version (int), number of documents (int), number of keywords (int),
+ *           offsets of the documents, dictionary, keys and postings sections (4 longs)
+ * documents: number of documents + 1 int offsets into the UTF-8 bytes of the document names,
+ *           followed by those bytes
+ * postings: for each keyword, the number of occurrences, and then for each occurrence
+ *           the document id and the frequency, all as varints. Occurrences are in descending
+ *           order of frequency, and each frequency is stored as its difference from the
+ *           previous one (the first one as is)
+ * dictionary: for each keyword in ascending order of its UTF-8 bytes, the int offset of the
+ *           keyword in the keys section and the long offset of its postings in the file,
+ *           followed by one more entry whose key offset is the size of the keys section
+ * keys:     the UTF-8 bytes of all keywords, in dictionary order
+ *
+ * Keywords must be added to a writer in ascending order. Postings are written straight to
+ * the file, and the dictionary and keys are spooled to temporary files, so a writer only
+ * holds the keyword being written in memory.
+ *
+ */
+public class IndexFile implements Closeable {
+
+	/**
+	 * "LSEI"
+	 */
+	static final int MAGIC = 0x4c534549;
+
+	static final int VERSION = 1;
+
+	/**
+	 * Size of the header, in bytes.
+	 */
+	static final int HEADER_SIZE = 4*4 + 4*8;
+
+	/**
+	 * Size of a dictionary entry, in bytes.
+	 */
+	static final int ENTRY_SIZE = 4 + 8;
+
+	private final File file;
+	private final File dictFile, keysFile;
+	private final DataOutputStream out, dict, keys;
+	private final int docCount;
+
+	/**
+	 * Offset in the file of the next byte written to out.
+	 */
+	private long position;
+
+	private long postingsOffset;
+	private int keysSize;
+	private int keywordCount;
+	private byte[] lastKey;
+
+	/**
+	 * Starts writing an index file for the given documents. Document ids are positions
+	 * in this array.
+	 *
+	 * @param indexFile Name of the index file to be written
+	 * @param documents Document names, indexed by document id
+	 * @throws IOException If the file cannot be written
+	 */
+	public IndexFile(String indexFile, String[] documents)
+	throws IOException {
+		file = new File(indexFile);
+		File dir = file.getAbsoluteFile().getParentFile();
+		File dictTemp = null, keysTemp = null;
+		DataOutputStream o = null, d = null, k;
+		try {
+			dictTemp = File.createTempFile("dict", ".tmp", dir);
+			keysTemp = File.createTempFile("keys", ".tmp", dir);
+			o = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			d = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dictTemp), 1 << 16));
+			k = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keysTemp), 1 << 16));
+		} catch (IOException e) {
+			// close and delete whatever was created before the failure
+			closeQuietly(o);
+			closeQuietly(d);
+			if (o != null) {
+				file.delete();
+			}
+			if (dictTemp != null) {
+				dictTemp.delete();
+			}
+			if (keysTemp != null) {
+				keysTemp.delete();
+			}
+			throw e;
+		}
+		dictFile = dictTemp;
+		keysFile = keysTemp;
+		out = o;
+		dict = d;
+		keys = k;
+		docCount = documents.length;
+
+		try {
+			// header is filled in by close
+			out.write(new byte[HEADER_SIZE]);
+			position = HEADER_SIZE;
+
+			byte[][] names = new byte[docCount][];
+			int offset = 0;
+			for (int i=0; i < docCount; i++) {
+				names[i] = documents[i].getBytes(StandardCharsets.UTF_8);
+				out.writeInt(offset);
+				offset += names[i].length;
+			}
+			out.writeInt(offset);
+			for (byte[] name : names) {
+				out.write(name);
+			}
+			position += 4L*(docCount+1) + offset;
+			postingsOffset = position;
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the occurrences of a keyword. Keywords must be added in ascending order of
+	 * their UTF-8 bytes (which for keywords of lower case letters is the same as String order).
+	 *
+	 * @param keyword Keyword
+	 * @param docIds Document ids of the occurrences, in descending order of frequency
+	 * @param freqs Frequencies of the occurrences, in descending order
+	 * @param count Number of occurrences
+	 * @throws IOException If the file cannot be written
+	 */
+	public void add(String keyword, int[] docIds, int[] freqs, int count)
+	throws IOException {
+		byte[] key = keyword.getBytes(StandardCharsets.UTF_8);
+		if (lastKey != null && compare(lastKey, key) >= 0) {
+			throw new IllegalArgumentException("Keywords out of order: " + keyword);
+		}
+		lastKey = key;
+
+		dict.writeInt(keysSize);
+		dict.writeLong(position);
+		keys.write(key);
+		keysSize += key.length;
+		keywordCount++;
+
+		writeVarint(count);
+		int prev = 0;
+		for (int i=0; i < count; i++) {
+			if (docIds[i] < 0 || docIds[i] >= docCount) {
+				throw new IllegalArgumentException("No such document id: " + docIds[i]);
+			}
+			if (i > 0 && freqs[i] > prev) {
+				throw new IllegalArgumentException("Frequencies out of order for " + keyword);
+			}
+			writeVarint(docIds[i]);
+			writeVarint(i == 0 ? freqs[i] : prev - freqs[i]);
+			prev = freqs[i];
+		}
+	}
+
+	/**
+	 * Writes the occurrences of a keyword, as kept in a keywordsIndex.
+	 *
+	 * @param keyword Keyword
+	 * @param occs Occurrences in descending order of frequency
+	 * @param docIds Document id of each document name
+	 * @throws IOException If the file cannot be written
+	 */
+	public void add(String keyword, ArrayList<Occurrence> occs, HashMap<String,Integer> docIds)
+	throws IOException {
+		int[] ids = new int[occs.size()];
+		int[] freqs = new int[occs.size()];
+		for (int i=0; i < ids.length; i++) {
+			ids[i] = docIds.get(occs.get(i).document);
+			freqs[i] = occs.get(i).frequency;
+		}
+		add(keyword, ids, freqs, ids.length);
+	}
+
+	/**
+	 * Appends the dictionary and keys, fills in the header, and closes the file.
+	 *
+	 * @throws IOException If the file cannot be written
+	 */
+	public void close()
+	throws IOException {
+		boolean written = false;
+		try {
+			dict.writeInt(keysSize);
+			dict.writeLong(position);
+			dict.close();
+			keys.close();
+
+			long dictOffset = position;
+			long keysOffset = dictOffset + (long)ENTRY_SIZE*(keywordCount+1);
+			copy(dictFile, out);
+			copy(keysFile, out);
+			out.close();
+
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.writeInt(MAGIC);
+				raf.writeInt(VERSION);
+				raf.writeInt(docCount);
+				raf.writeInt(keywordCount);
+				raf.writeLong(HEADER_SIZE);
+				raf.writeLong(dictOffset);
+				raf.writeLong(keysOffset);
+				raf.writeLong(postingsOffset);
+			}
+			finally {
+				raf.close();
+			}
+			written = true;
+		}
+		finally {
+			closeQuietly(out);
+			closeQuietly(dict);
+			closeQuietly(keys);
+			dictFile.delete();
+			keysFile.delete();
+			if (!written) {
+				// without its header the file would not open, but it is of no use either
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Abandons the file: closes it, and deletes it and the temporary files. A writer that
+	 * fails partway through must be aborted rather than closed, so that no index with
+	 * keywords missing is left behind.
+	 */
+	public void abort() {
+		closeQuietly(out);
+		closeQuietly(dict);
+		closeQuietly(keys);
+		file.delete();
+		dictFile.delete();
+		keysFile.delete();
+	}
+
+	private static void closeQuietly(Closeable c) {
+		if (c == null) {
+			return;
+		}
+		try {
+			c.close();
+		}
+		catch (IOException e) {
+			// the file is being given up, or was already written
+		}
+	}
+
+	/**
+	 * Writes the whole keywordsIndex of an engine to an index file. Document ids are
+	 * assigned in the order in which documents are first seen in ascending keyword order.
+	 *
+	 * @param keywordsIndex Index to be written
+	 * @param indexFile Name of the index file
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void save(HashMap<String,ArrayList<Occurrence>> keywordsIndex, String indexFile)
+	throws IOException {
+		String[] sorted = keywordsIndex.keySet().toArray(new String[0]);
+		Arrays.sort(sorted, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return IndexFile.compare(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+			}
+		});
+
+		LinkedHashMap<String,Integer> docIds = new LinkedHashMap<String,Integer>();
+		for (String keyword : sorted) {
+			for (Occurrence occ : keywordsIndex.get(keyword)) {
+				if (!docIds.containsKey(occ.document)) {
+					docIds.put(occ.document, docIds.size());
+				}
+			}
+		}
+
+		IndexFile writer = new IndexFile(indexFile, docIds.keySet().toArray(new String[0]));
+		try {
+			for (String keyword : sorted) {
+				writer.add(keyword, keywordsIndex.get(keyword), docIds);
+			}
+		} catch (IOException e) {
+			writer.abort();
+			throw e;
+		} catch (RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		writer.close();
+	}
+
+	private void writeVarint(int value)
+	throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+			position++;
+		}
+		out.write(value);
+		position++;
+	}
+
+	private static void copy(File from, OutputStream to)
+	throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(from), 1 << 16);
+		try {
+			byte[] buf = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				to.write(buf, 0, n);
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Compares byte arrays as unsigned bytes, which orders UTF-8 strings by code point.
+	 */
+	static int compare(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i=0; i < n; i++) {
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return a.length - b.length;
+	}
+}
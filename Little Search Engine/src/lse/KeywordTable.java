@@ -0,0 +1,199 @@
+package lse;
+
+import java.util.Arrays;
+
+/**
+ * This class is an open addressing hash table of keyword counts for a single document.
+ * A keyword can be looked up directly from the characters in a buffer, so that a String
+ * is only created the first time a keyword is seen in the document.
+ *
+ * Words that turned out to be noise words are kept in the table with a count of NOISE,
+ * so that their later occurrences are also rejected without creating a String.
+ *
+ */
+class KeywordTable {
+
+	/**
+	 * Count stored for a word that is not a keyword.
+	 */
+	static final int NOISE = -1;
+
+	/**
+	 * Keys, null for an empty slot.
+	 */
+	String[] keys;
+
+	/**
+	 * Hash codes of the keys, same as String.hashCode().
+	 */
+	int[] hashes;
+
+	/**
+	 * Number of occurrences of each key, or NOISE.
+	 */
+	int[] counts;
+
+	/**
+	 * Word positions of the occurrences of each keyword in the document, if positions are
+	 * being recorded; the first counts[slot] entries of each array are in use.
+	 */
+	int[][] positions;
+
+	/**
+	 * Number of keys (including noise words) in the table.
+	 */
+	int size;
+
+	/**
+	 * Initializes an empty table.
+	 *
+	 * @param recordPositions Whether the position of every occurrence is recorded as well
+	 */
+	KeywordTable(boolean recordPositions) {
+		keys = new String[256];
+		hashes = new int[256];
+		counts = new int[256];
+		if (recordPositions) {
+			positions = new int[256][];
+		}
+	}
+
+	/**
+	 * Finds the slot of the word held in buf[0..len-1].
+	 *
+	 * @param buf Characters of the word
+	 * @param len Length of the word
+	 * @param hash Hash code of the word, computed as String.hashCode() would
+	 * @return Slot of the word if it is in the table, otherwise -(slot where it would go)-1
+	 */
+	int find(char[] buf, int len, int hash) {
+		int mask = keys.length-1;
+		for (int slot = mix(hash) & mask; ; slot = (slot+1) & mask) {
+			String key = keys[slot];
+			if (key == null) {
+				return -slot-1;
+			}
+			if (hashes[slot] == hash && key.length() == len) {
+				int i = 0;
+				while (i < len && key.charAt(i) == buf[i]) {
+					i++;
+				}
+				if (i == len) {
+					return slot;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the slot of the given word.
+	 *
+	 * @param word Word to look up
+	 * @return Slot of the word if it is in the table, otherwise -(slot where it would go)-1
+	 */
+	int find(String word) {
+		int hash = word.hashCode();
+		int mask = keys.length-1;
+		for (int slot = mix(hash) & mask; ; slot = (slot+1) & mask) {
+			String key = keys[slot];
+			if (key == null) {
+				return -slot-1;
+			}
+			if (hashes[slot] == hash && key.equals(word)) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Counts one more occurrence of a keyword that is already in the table.
+	 *
+	 * @param slot Slot returned by find
+	 * @param position Word position of the occurrence in the document
+	 */
+	void increment(int slot, int position) {
+		if (counts[slot] != NOISE) {
+			if (positions != null) {
+				int[] p = positions[slot];
+				if (counts[slot] == p.length) {
+					p = positions[slot] = Arrays.copyOf(p, 2*p.length);
+				}
+				p[counts[slot]] = position;
+			}
+			counts[slot]++;
+		}
+	}
+
+	/**
+	 * Puts a word that is not in the table yet at the slot returned by find.
+	 *
+	 * @param slot Negative value returned by find for this word
+	 * @param word The word
+	 * @param count 1 for a keyword, or NOISE
+	 * @param position Word position of the occurrence in the document
+	 */
+	void insert(int slot, String word, int count, int position) {
+		slot = -slot-1;
+		keys[slot] = word;
+		hashes[slot] = word.hashCode();
+		counts[slot] = count;
+		if (positions != null && count != NOISE) {
+			positions[slot] = new int[] {position, 0};
+		}
+		size++;
+		if (2*size > keys.length) {
+			rehash();
+		}
+	}
+
+	/**
+	 * Counts one occurrence of the given keyword, adding it if needed.
+	 *
+	 * @param word Keyword
+	 * @param position Word position of the occurrence in the document
+	 */
+	void add(String word, int position) {
+		int slot = find(word);
+		if (slot >= 0) {
+			increment(slot, position);
+		}
+		else {
+			insert(slot, word, 1, position);
+		}
+	}
+
+	private void rehash() {
+		String[] oldKeys = keys;
+		int[] oldHashes = hashes, oldCounts = counts;
+		int[][] oldPositions = positions;
+		keys = new String[2*oldKeys.length];
+		hashes = new int[keys.length];
+		counts = new int[keys.length];
+		if (oldPositions != null) {
+			positions = new int[keys.length][];
+		}
+		int mask = keys.length-1;
+		for (int i=0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null) {
+				continue;
+			}
+			int slot = mix(oldHashes[i]) & mask;
+			while (keys[slot] != null) {
+				slot = (slot+1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			hashes[slot] = oldHashes[i];
+			counts[slot] = oldCounts[i];
+			if (oldPositions != null) {
+				positions[slot] = oldPositions[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreads the high bits of a String hash code, like HashMap does.
+	 */
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,268 @@
+package lse;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This class splits a document into keywords, as a replacement for reading it with
+ * Scanner.next() and calling getKeyword on every token.
+ *
+ * The file is read through a pooled direct buffer (or memory-mapped, if it is large),
+ * decoded into a reusable char buffer, and each token is normalized in place in a
+ * reusable token buffer. A String is only created the first time a word is seen in
+ * the document.
+ *
+ * Tokens are separated by whitespace, exactly as Scanner does by default, and are
+ * turned into keywords by exactly the rules of getKeyword. Tokens that are not all
+ * ASCII are handed to getKeyword itself, so case mapping outside ASCII is the same too.
+ * Noise words are recognized by the engine's NoiseWordFilter while a token is being
+ * lower cased, so no String is ever created for them.
+ *
+ * A tokenizer is not thread safe; use get() to obtain the one for the current thread.
+ *
+ */
+class KeywordTokenizer {
+
+	/**
+	 * Size of the pooled byte and char buffers.
+	 */
+	private static final int BUFFER_SIZE = 64*1024;
+
+	/**
+	 * Files at least this large are memory-mapped instead of read into the pooled buffer.
+	 */
+	private static final long MAP_THRESHOLD = 1L << 20;
+
+	/**
+	 * One tokenizer, with its buffers, per thread.
+	 */
+	private static final ThreadLocal<KeywordTokenizer> POOL = new ThreadLocal<KeywordTokenizer>() {
+		protected KeywordTokenizer initialValue() {
+			return new KeywordTokenizer();
+		}
+	};
+
+	/**
+	 * Whether String.toLowerCase() maps ASCII letters to ASCII letters in the default
+	 * locale (it does not in Turkish, for instance). If not, every token takes the slow path.
+	 */
+	private static final boolean ASCII_LOWER_CASE =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+
+	private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 * The token being read, and its length.
+	 */
+	private char[] token = new char[64];
+	private int tokenLength;
+
+	/**
+	 * Whether all characters of the current token are ASCII.
+	 */
+	private boolean tokenAscii = true;
+
+	/**
+	 * Word position of the current token in the document, counting every token.
+	 */
+	private int position;
+
+	/**
+	 * Table the current document's keywords go into, and the engine whose noise words
+	 * and getKeyword rules apply.
+	 */
+	private KeywordTable table;
+	private LittleSearchEngine engine;
+	private NoiseWordFilter filter;
+
+	private KeywordTokenizer() { }
+
+	/**
+	 * Returns the tokenizer of the calling thread.
+	 *
+	 * @return Tokenizer for this thread
+	 */
+	static KeywordTokenizer get() {
+		return POOL.get();
+	}
+
+	/**
+	 * Scans a document, and counts the occurrences of all its keywords.
+	 *
+	 * @param docFile Name of the document file
+	 * @param engine Engine whose noise words and keyword rules are used
+	 * @param recordPositions Whether the word position of every keyword occurrence is recorded
+	 * @return Table of keyword counts for the document
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 */
+	KeywordTable scan(String docFile, LittleSearchEngine engine, boolean recordPositions)
+	throws FileNotFoundException {
+
+		FileInputStream in = new FileInputStream(docFile);
+		this.table = new KeywordTable(recordPositions);
+		this.engine = engine;
+		this.filter = engine.noiseWordFilter != null ? engine.noiseWordFilter : NoiseWordFilter.EMPTY;
+		position = 0;
+		tokenLength = 0;
+		tokenAscii = true;
+		decoder.reset();
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size >= MAP_THRESHOLD) {
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				decode(mapped, true);
+			}
+			else {
+				bytes.clear();
+				while (channel.read(bytes) != -1) {
+					bytes.flip();
+					decode(bytes, false);
+					bytes.compact();
+				}
+				bytes.flip();
+				decode(bytes, true);
+			}
+			endToken();
+			return table;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		finally {
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+				// nothing was written, nothing is lost
+			}
+			this.table = null;
+			this.engine = null;
+			this.filter = null;
+		}
+	}
+
+	/**
+	 * Decodes as much of the input as possible, and tokenizes the decoded characters.
+	 *
+	 * @param in Input bytes
+	 * @param endOfInput Whether there is no more input after these bytes
+	 */
+	private void decode(ByteBuffer in, boolean endOfInput) {
+		while (true) {
+			chars.clear();
+			boolean overflow = decoder.decode(in, chars, endOfInput).isOverflow();
+			if (!overflow && endOfInput) {
+				overflow = decoder.flush(chars).isOverflow();
+			}
+			chars.flip();
+			tokenize(chars);
+			if (!overflow) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Adds decoded characters to the current token, ending the token at whitespace.
+	 * A token may continue into the next buffer.
+	 *
+	 * @param in Decoded characters
+	 */
+	private void tokenize(CharBuffer in) {
+		char[] buf = in.array();
+		int end = in.arrayOffset() + in.limit();
+		for (int i = in.arrayOffset() + in.position(); i < end; i++) {
+			char c = buf[i];
+			if (Character.isWhitespace(c)) {
+				endToken();
+				continue;
+			}
+			if (tokenLength == token.length) {
+				char[] bigger = new char[2*token.length];
+				System.arraycopy(token, 0, bigger, 0, tokenLength);
+				token = bigger;
+			}
+			token[tokenLength++] = c;
+			tokenAscii &= c < 128;
+		}
+	}
+
+	/**
+	 * Turns the current token, if any, into a keyword and counts it. This is getKeyword,
+	 * done in place in the token buffer.
+	 */
+	private void endToken() {
+		if (tokenLength == 0) {
+			return;
+		}
+		int len = tokenLength;
+		boolean ascii = tokenAscii;
+		int pos = position++;
+		tokenLength = 0;
+		tokenAscii = true;
+
+		if (!ascii || !ASCII_LOWER_CASE) {
+			String word = engine.getKeyword(new String(token, 0, len));
+			if (word != null) {
+				table.add(word, pos);
+			}
+			return;
+		}
+
+		// strip trailing punctuation
+		while (len > 0) {
+			char c = token[len-1];
+			if (c == '.' || c == ',' || c == '?' || c == ':' || c == ';' || c == '!') {
+				len--;
+			}
+			else {
+				break;
+			}
+		}
+		if (len == 0) {
+			return;
+		}
+
+		// only letters, lower cased in place, and run through the noise word filter
+		int hash = 0;
+		int state = NoiseWordFilter.START;
+		for (int i=0; i < len; i++) {
+			char c = token[i];
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+				token[i] = c;
+			}
+			else if (c < 'a' || c > 'z') {
+				return;
+			}
+			hash = 31*hash + c;
+			state = filter.step(state, c);
+		}
+		if (filter.accepts(state)) {
+			return;
+		}
+
+		int slot = table.find(token, len, hash);
+		if (slot >= 0) {
+			table.increment(slot, pos);
+			return;
+		}
+		// the hash set is still checked once per new word, in case noise words were added to it directly
+		String word = new String(token, 0, len);
+		table.insert(slot, word, engine.noiseWords.contains(word) ? KeywordTable.NOISE : 1, pos);
+	}
+}
@@ -0,0 +1,96 @@
+package lse;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a histogram of durations in nanoseconds with a fixed relative precision,
+ * in the style of HdrHistogram: each power of two is split into 16 buckets, so a value
+ * is counted in a bucket no wider than 1/16 of the value. Recording a value is one
+ * array increment, with no allocation and no lock, from any number of threads.
+ *
+ */
+class LatencyHistogram {
+
+	/**
+	 * Buckets per power of two, as a power of two.
+	 */
+	private static final int SUB_BITS = 4, SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+
+	/**
+	 * Returns the bucket of a value.
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)Math.max(value, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the smallest value counted in a bucket.
+	 */
+	private static long lowest(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		return (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+	}
+
+	/**
+	 * Counts one duration.
+	 *
+	 * @param nanos Duration, in nanoseconds
+	 */
+	void record(long nanos) {
+		counts.incrementAndGet(bucket(nanos));
+	}
+
+	/**
+	 * Returns the number of durations counted.
+	 *
+	 * @return Count
+	 */
+	long count() {
+		long n = 0;
+		for (int i=0; i < counts.length(); i++) {
+			n += counts.get(i);
+		}
+		return n;
+	}
+
+	/**
+	 * Returns a percentile of the durations counted, to within the precision of the buckets.
+	 *
+	 * @param percentile Percentile, from 0 to 100
+	 * @return Smallest value of the bucket the percentile falls in, or 0 if nothing was counted
+	 */
+	long percentile(double percentile) {
+		long total = count();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i=0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return lowest(i);
+			}
+		}
+		return lowest(counts.length() - 1);
+	}
+
+	/**
+	 * Clears all counts.
+	 */
+	void reset() {
+		for (int i=0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+	}
+}
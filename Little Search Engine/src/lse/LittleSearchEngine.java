@@ -2,13 +2,15 @@ package lse;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
 
 /**
  * This class builds an index of keywords. Each keyword maps to a set of pages in
  * which it occurs, with frequency of occurrence in each page.
  *
  */
-public class LittleSearchEngine {
+public class LittleSearchEngine implements PostingSource {
 	
 	/**
 	 * This is a hash table of all keywords. The key is the actual keyword, and the associated value is
@@ -22,49 +24,170 @@ public class LittleSearchEngine {
 	 */
 	HashSet<String> noiseWords;
 	
+	/**
+	 * The noise words compiled for the keyword tokenizer, rebuilt by loadNoiseWords. Null
+	 * until noise words are loaded.
+	 */
+	volatile NoiseWordFilter noiseWordFilter;
+	
+	/**
+	 * The keywords hash table of every document merged into the index, by document name.
+	 * Its Occurrence objects are the ones in keywordsIndex, so that a document's contributions
+	 * can be found again and removed.
+	 */
+	HashMap<String,HashMap<String,Occurrence>> documentKeywords;
+	
+	/**
+	 * Length of each document in the index, as its total number of keyword occurrences, and
+	 * the sum of all the lengths. Used for ranking by BM25.
+	 */
+	HashMap<String,Integer> documentLengths;
+	long totalLength;
+	
+	/**
+	 * BM25 statistics of the current index, built by the first rankedSearch after a change,
+	 * in constant time.
+	 */
+	volatile Bm25Ranker ranker;
+	
+	/**
+	 * Sorted keywords, for wildcardSearch. Kept up to date with keywordsIndex, under the
+	 * write lock.
+	 */
+	final TermDictionary termDictionary;
+	
+	/**
+	 * Guards keywordsIndex: searches hold the read lock, changes to the index hold the write 
+	 * lock, so a search sees the index either before or after a change, never partway.
+	 */
+	final ReentrantReadWriteLock lock;
+	
+	/**
+	 * Held by every change to the index, for longer than the write lock: a parallel makeIndex
+	 * holds it while it reads keywordsIndex from other threads, and only takes the write lock 
+	 * to publish its result.
+	 */
+	final ReentrantLock updates;
+	
+	/**
+	 * Word positions of keywords, for AND, NOT and phrase searches. Null unless enabled
+	 * with enablePositions, which is the only writer; it is read without a lock to tell
+	 * whether positions are recorded.
+	 */
+	volatile PositionalIndex positionalIndex;
+	
+	/**
+	 * Results of recent top5search and topKSearch calls. Null unless enabled with 
+	 * enableQueryCache.
+	 */
+	volatile QueryCache queryCache;
+	
+	/**
+	 * Timings and counts of the hot paths. Null unless enabled with enableMetrics, in which
+	 * case the hot paths do not read the clock.
+	 */
+	volatile SearchMetrics metrics;
+	
+	/**
+	 * Cursors straight on the lists of keywordsIndex, for searches that already hold the
+	 * read lock, which must be held for as long as the cursors are used.
+	 */
+	private final PostingSource indexPostings = new PostingSource() {
+		public PostingCursor postings(String keyword) {
+			ArrayList<Occurrence> occs = keywordsIndex.get(keyword);
+			return occs == null ? null : new OccurrenceCursor(occs);
+		}
+	};
+	
+	/**
+	 * A document scanned by scanDocument, ready to be merged into the index.
+	 */
+	static class ScannedDocument {
+		
+		/**
+		 * Name of the document file
+		 */
+		String docFile;
+		
+		/**
+		 * Keywords hash table, as returned by loadKeywordsFromDocument
+		 */
+		HashMap<String,Occurrence> kws;
+		
+		/**
+		 * Encoded keyword positions, or null if positions are not recorded
+		 */
+		PositionalIndex.Document positions;
+	}
+	
 	/**
 	 * Creates the keyWordsIndex and noiseWords hash tables.
 	 */
 	public LittleSearchEngine() {
 		keywordsIndex = new HashMap<String,ArrayList<Occurrence>>(1000,2.0f);
 		noiseWords = new HashSet<String>(100,2.0f);
+		documentKeywords = new HashMap<String,HashMap<String,Occurrence>>(1000,2.0f);
+		documentLengths = new HashMap<String,Integer>(1000,2.0f);
+		termDictionary = new TermDictionary();
+		lock = new ReentrantReadWriteLock();
+		updates = new ReentrantLock();
 	}
 	
 	/**
 	 * Scans a document, and loads all keywords found into a hash table of keyword occurrences
 	 * in the document. Uses the getKeyWord method to separate keywords from other words.
 	 * 
+	 * The document is read with a KeywordTokenizer, which applies the same rules as getKeyword
+	 * in place in a reusable buffer, so that a String is only created for each new word.
+	 * 
 	 * @param docFile Name of the document file to be scanned and loaded
 	 * @return Hash table of keywords in the given document, each associated with an Occurrence object
 	 * @throws FileNotFoundException If the document file is not found on disk
 	 */
 	public HashMap<String,Occurrence> loadKeywordsFromDocument(String docFile) 
+	throws FileNotFoundException {
+		
+		return scanDocument(docFile, false).kws;
+				
+	}
+	
+	/**
+	 * Scans a document like loadKeywordsFromDocument, and also encodes the word positions
+	 * of its keywords if they are asked for.
+	 * 
+	 * @param docFile Name of the document file to be scanned and loaded
+	 * @param recordPositions Whether keyword positions are recorded
+	 * @return Scanned document
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 */
+	ScannedDocument scanDocument(String docFile, boolean recordPositions) 
 	throws FileNotFoundException {
 		
 		if (docFile == null) {
 			throw new FileNotFoundException("File Not Found");
 		}
 		
-		HashMap<String, Occurrence> map = new HashMap<String, Occurrence>();
+		SearchMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		KeywordTable table = KeywordTokenizer.get().scan(docFile, this, recordPositions);
 		
-		Scanner sc = new Scanner(new File(docFile));
-		while (sc.hasNext()){
-			
-			String word = getKeyword(sc.next());
-			if (word != null) {
-				if (map.containsKey(word) ){
-					map.get(word).frequency++;
-				}
-				else {
-					Occurrence occurrence = new Occurrence(docFile, 1);
-					map.put(word, occurrence);
-				}
+		HashMap<String, Occurrence> map = new HashMap<String, Occurrence>(2*table.size);
+		for (int slot=0; slot < table.keys.length; slot++) {
+			if (table.keys[slot] != null && table.counts[slot] != KeywordTable.NOISE) {
+				map.put(table.keys[slot], new Occurrence(docFile, table.counts[slot]));
 			}
 		}
-		sc.close();
 		
-		return map;
-				
+		ScannedDocument doc = new ScannedDocument();
+		doc.docFile = docFile;
+		doc.kws = map;
+		if (recordPositions) {
+			doc.positions = PositionalIndex.encode(table);
+		}
+		if (m != null) {
+			m.scanned(System.nanoTime() - start);
+		}
+		return doc;
 	}
 	
 	/**
@@ -74,25 +197,222 @@ public class LittleSearchEngine {
 	 * frequency) in the same keyword's Occurrence list in the master hash table. 
 	 * This is done by calling the insertLastOccurrence method.
 	 * 
+	 * If the document is already in the index, its old keywords are replaced by these ones.
+	 * 
 	 * @param kws Keywords hash table for a document
 	 */
 	public void mergeKeywords(HashMap<String,Occurrence> kws) {
 
-		for (String key : kws.keySet()) {
-			
-			ArrayList<Occurrence> occs = new ArrayList<>();
-			 
-			if (keywordsIndex.containsKey(key)) {
-				occs = keywordsIndex.get(key);
+		updates.lock();
+		lock.writeLock().lock();
+		SearchMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			for (String key : kws.keySet()) {
+				
+				ArrayList<Occurrence> occs = new ArrayList<>();
+				 
+				if (keywordsIndex.containsKey(key)) {
+					occs = keywordsIndex.get(key);
+				}
+				else {
+					termDictionary.add(key);
+				}
+				
+				occs.add(kws.get(key));
+				insertLastOccurrence(occs);
+				keywordsIndex.put(key, occs);
 			}
-			
-			occs.add(kws.get(key));
-			insertLastOccurrence(occs);
-			keywordsIndex.put(key, occs);
+			recordDocument(kws);
+		}
+		finally {
+			if (m != null) {
+				m.merged(System.nanoTime() - start);
+			}
+			lock.writeLock().unlock();
+			updates.unlock();
 		}
 				
 	}
 	
+	/**
+	 * Merges a scanned document into keywordsIndex and, if it is enabled, the positional index.
+	 * 
+	 * @param docFile Name of the document file
+	 * @param doc Scanned document
+	 */
+	private void mergeDocument(String docFile, ScannedDocument doc) {
+		updates.lock();
+		lock.writeLock().lock();
+		try {
+			mergeKeywords(doc.kws);
+			if (positionalIndex != null && doc.positions != null) {
+				positionalIndex.add(docFile, doc.positions);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+			updates.unlock();
+		}
+	}
+	
+	/**
+	 * Remembers the keywords hash table of a document that has been merged into the index.
+	 * If another table was merged for the same document before, its Occurrences are removed
+	 * from the index, so that the document is not counted twice.
+	 * 
+	 * @param kws Keywords hash table for a document
+	 */
+	private void recordDocument(HashMap<String,Occurrence> kws) {
+		Iterator<Occurrence> occs = kws.values().iterator();
+		if (!occs.hasNext()) {
+			return;
+		}
+		String docFile = occs.next().document;
+		if (documentKeywords.containsKey(docFile)) {
+			// the table may be this very one, merged twice: its Occurrences are then in the
+			// index twice, and one of each is removed
+			forgetDocument(docFile);
+		}
+		documentKeywords.put(docFile, kws);
+		int length = 0;
+		for (Occurrence occ : kws.values()) {
+			length += occ.frequency;
+		}
+		Integer old = documentLengths.put(docFile, length);
+		totalLength += length - (old == null ? 0 : old);
+		ranker = null;
+		invalidate(kws.keySet());
+	}
+	
+	/**
+	 * Drops the cached results of queries that have any of the given keywords. Called with
+	 * the write lock held, so no search can cache a result from before the change.
+	 * 
+	 * @param keywords Keywords whose occurrences have changed
+	 */
+	private void invalidate(Collection<String> keywords) {
+		QueryCache cache = queryCache;
+		if (cache != null) {
+			cache.invalidate(keywords);
+		}
+	}
+	
+	/**
+	 * Adds a document to the index, or replaces its keywords if it is already in the index.
+	 * The document is scanned before the index is locked, and the change then takes time
+	 * proportional to the number of keywords in the old and new versions of the document: each
+	 * Occurrence is removed from or inserted into its list by binary search, with no re-sorting.
+	 * Concurrent searches see the index either without or with the whole change.
+	 * 
+	 * @param docFile Name of the document file
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 */
+	public void addDocument(String docFile) 
+	throws FileNotFoundException {
+		ScannedDocument doc = scanDocument(docFile, positionalIndex != null);
+		updates.lock();
+		lock.writeLock().lock();
+		try {
+			removeDocument(docFile);
+			mergeDocument(docFile, doc);
+		}
+		finally {
+			lock.writeLock().unlock();
+			updates.unlock();
+		}
+	}
+	
+	/**
+	 * Re-scans a document that has changed on disk, and replaces its keywords in the index.
+	 * Same as addDocument.
+	 * 
+	 * @param docFile Name of the document file
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 */
+	public void updateDocument(String docFile) 
+	throws FileNotFoundException {
+		addDocument(docFile);
+	}
+	
+	/**
+	 * Removes all occurrences of keywords in a document from the index. Keywords that 
+	 * occur in no other document are removed from the index altogether.
+	 * 
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the index, false otherwise
+	 */
+	public boolean removeDocument(String docFile) {
+		updates.lock();
+		lock.writeLock().lock();
+		try {
+			if (positionalIndex != null) {
+				positionalIndex.remove(docFile);
+			}
+			return forgetDocument(docFile);
+		}
+		finally {
+			lock.writeLock().unlock();
+			updates.unlock();
+		}
+	}
+	
+	/**
+	 * Removes the keywords of a document from keywordsIndex, and its keywords hash table and
+	 * length, leaving the positional index alone. Called with the write lock held.
+	 * 
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the index, false otherwise
+	 */
+	private boolean forgetDocument(String docFile) {
+		HashMap<String,Occurrence> kws = documentKeywords.remove(docFile);
+		if (kws == null) {
+			return false;
+		}
+		totalLength -= documentLengths.remove(docFile);
+		ranker = null;
+		invalidate(kws.keySet());
+		for (String key : kws.keySet()) {
+			ArrayList<Occurrence> occs = keywordsIndex.get(key);
+			if (occs == null) {
+				continue;
+			}
+			removeOccurrence(occs, kws.get(key));
+			if (occs.isEmpty()) {
+				keywordsIndex.remove(key);
+				termDictionary.remove(key);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes an Occurrence object from a list in descending order of frequencies. The run of
+	 * occurrences with the same frequency is found by binary search, and then searched for
+	 * the object itself.
+	 * 
+	 * @param occs List of Occurrences, in descending order of frequencies
+	 * @param occ Occurrence to be removed
+	 */
+	private static void removeOccurrence(ArrayList<Occurrence> occs, Occurrence occ) {
+		int lo = 0, hi = occs.size()-1;
+		while (lo <= hi) {
+			int mid = (lo + hi)/2;
+			if (occs.get(mid).frequency > occ.frequency) {
+				lo = mid+1;
+			}
+			else {
+				hi = mid-1;
+			}
+		}
+		for (int i=lo; i < occs.size() && occs.get(i).frequency == occ.frequency; i++) {
+			if (occs.get(i) == occ) {
+				occs.remove(i);
+				return;
+			}
+		}
+	}
+	
 	/**
 	 * Given a word, returns it as a keyword if it passes the keyword test,
 	 * otherwise returns null. A keyword is any word that, after being stripped of any
@@ -161,6 +481,9 @@ public class LittleSearchEngine {
 			return null;
 		}
 		
+		SearchMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		
 		ArrayList<Integer> midIndexes = new ArrayList<Integer>();
 
 		int lo = 0, hi = occs.size()-2, mid = 0;
@@ -188,6 +511,10 @@ public class LittleSearchEngine {
 		}
 
 		occs.add(mid, occs.remove(occs.size()-1));
+		
+		if (m != null) {
+			m.inserted(System.nanoTime() - start);
+		}
 	
 		return midIndexes;
 	}
@@ -203,22 +530,486 @@ public class LittleSearchEngine {
 	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
 	 */
 	public void makeIndex(String docsFile, String noiseWordsFile) 
+	throws FileNotFoundException {
+		makeIndex(docsFile, noiseWordsFile, 1);
+	}
+	
+	/**
+	 * Same as makeIndex(docsFile, noiseWordsFile), but documents are scanned by 
+	 * loadKeywordsFromDocument on a pool of worker threads. 
+	 * 
+	 * The per-document hash tables are merged into keywordsIndex by a second set of
+	 * threads, each of which owns a disjoint stripe of the keywords (by hash code), so
+	 * no lock is ever taken on the index. Every stripe merges the documents in the order
+	 * in which they are listed in docsFile, so each keyword's Occurrence list goes through
+	 * exactly the same sequence of insertLastOccurrence calls as in a sequential build, and
+	 * the resulting index is identical to it, including the order of equal frequencies.
+	 * 
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @param threads Number of worker threads; 1 (or less) indexes sequentially on the calling thread
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 */
+	public void makeIndex(String docsFile, String noiseWordsFile, int threads) 
 	throws FileNotFoundException {
 		// load noise words to hash table
-		Scanner sc = new Scanner(new File(noiseWordsFile));
+		loadNoiseWords(noiseWordsFile);
+		
+		// read the list of documents
+		ArrayList<String> docFiles = new ArrayList<String>();
+		Scanner sc = new Scanner(new File(docsFile));
 		while (sc.hasNext()) {
-			String word = sc.next();
-			noiseWords.add(word);
+			docFiles.add(sc.next());
 		}
+		sc.close();
 		
 		// index all keywords
-		sc = new Scanner(new File(docsFile));
+		if (threads <= 1 || docFiles.size() <= 1) {
+			for (String docFile : docFiles) {
+				mergeDocument(docFile, scanDocument(docFile, positionalIndex != null));
+			}
+		}
+		else {
+			parallelIndex(docFiles, threads);
+		}
+	}
+	
+	/**
+	 * Loads noise words into the noiseWords hash set, and compiles all the noise words into 
+	 * a NoiseWordFilter for the keyword tokenizer.
+	 * 
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws FileNotFoundException If the noise words file is not found on disk
+	 */
+	public void loadNoiseWords(String noiseWordsFile) 
+	throws FileNotFoundException {
+		Scanner sc = new Scanner(new File(noiseWordsFile));
 		while (sc.hasNext()) {
-			String docFile = sc.next();
-			HashMap<String,Occurrence> kws = loadKeywordsFromDocument(docFile);
-			mergeKeywords(kws);
+			String word = sc.next();
+			noiseWords.add(word);
 		}
 		sc.close();
+		noiseWordFilter = new NoiseWordFilter(noiseWords);
+	}
+	
+	/**
+	 * Scans the given documents on a pool of threads, and merges their keywords into 
+	 * keywordsIndex on another pool of threads, one per keyword stripe. Only a small
+	 * multiple of the number of threads worth of scanned documents is held in memory 
+	 * at any time.
+	 * 
+	 * @param docFiles Document file names, in indexing order
+	 * @param threads Number of scanning threads, also the number of keyword stripes
+	 * @throws FileNotFoundException If any of the documents is not found on disk
+	 */
+	private void parallelIndex(ArrayList<String> docFiles, int threads) 
+	throws FileNotFoundException {
+		
+		final int stripes = threads;
+		final int docCount = docFiles.size();
+		final boolean recordPositions = positionalIndex != null;
+		final Semaphore window = new Semaphore(4*threads*stripes);
+		
+		ExecutorService scanners = Executors.newFixedThreadPool(threads);
+		ExecutorService mergers = Executors.newFixedThreadPool(stripes);
+		
+		// each stripe takes the scanned documents in order from its own queue, and merges
+		// its own keywords into its own segment of the index
+		ArrayList<BlockingQueue<Future<ScannedDocument>>> queues = 
+				new ArrayList<BlockingQueue<Future<ScannedDocument>>>();
+		ArrayList<Future<HashMap<String,ArrayList<Occurrence>>>> segments = 
+				new ArrayList<Future<HashMap<String,ArrayList<Occurrence>>>>();
+		final ArrayList<ScannedDocument> documents = new ArrayList<ScannedDocument>();
+		for (int s=0; s < stripes; s++) {
+			final int stripe = s;
+			final BlockingQueue<Future<ScannedDocument>> queue = 
+					new LinkedBlockingQueue<Future<ScannedDocument>>();
+			queues.add(queue);
+			segments.add(mergers.submit(new Callable<HashMap<String,ArrayList<Occurrence>>>() {
+				public HashMap<String,ArrayList<Occurrence>> call() throws Exception {
+					HashMap<String,ArrayList<Occurrence>> segment = 
+							new HashMap<String,ArrayList<Occurrence>>(1000, 2.0f);
+					for (int d=0; d < docCount; d++) {
+						ScannedDocument doc = queue.take().get();
+						SearchMetrics m = metrics;
+						long start = m == null ? 0 : System.nanoTime();
+						HashMap<String,Occurrence> kws = doc.kws;
+						for (String key : kws.keySet()) {
+							if (Math.floorMod(key.hashCode(), stripes) != stripe) {
+								continue;
+							}
+							ArrayList<Occurrence> occs = segment.get(key);
+							if (occs == null) {
+								// keywordsIndex is only read while the stripes are running, and
+								// its lists are copied so that searches never see them change
+								occs = keywordsIndex.get(key);
+								occs = occs == null ? new ArrayList<Occurrence>() : new ArrayList<Occurrence>(occs);
+								segment.put(key, occs);
+							}
+							occs.add(kws.get(key));
+							insertLastOccurrence(occs);
+						}
+						if (m != null) {
+							m.merged(System.nanoTime() - start);
+						}
+						if (stripe == 0) {
+							documents.add(doc);
+						}
+						window.release();
+					}
+					return segment;
+				}
+			}));
+		}
+		
+		updates.lock();
+		try {
+			for (int d=0; d < docCount; d++) {
+				final String docFile = docFiles.get(d);
+				while (!window.tryAcquire(stripes, 10, TimeUnit.MILLISECONDS)) {
+					// a stripe only finishes early if it failed
+					for (Future<HashMap<String,ArrayList<Occurrence>>> segment : segments) {
+						if (segment.isDone()) {
+							segment.get();
+						}
+					}
+				}
+				Future<ScannedDocument> doc = 
+						scanners.submit(new Callable<ScannedDocument>() {
+							public ScannedDocument call() throws FileNotFoundException {
+								return scanDocument(docFile, recordPositions);
+							}
+						});
+				for (BlockingQueue<Future<ScannedDocument>> queue : queues) {
+					queue.add(doc);
+				}
+			}
+			
+			ArrayList<HashMap<String,ArrayList<Occurrence>>> merged = 
+					new ArrayList<HashMap<String,ArrayList<Occurrence>>>();
+			for (Future<HashMap<String,ArrayList<Occurrence>>> segment : segments) {
+				merged.add(segment.get());
+			}
+			lock.writeLock().lock();
+			try {
+				for (HashMap<String,ArrayList<Occurrence>> segment : merged) {
+					keywordsIndex.putAll(segment);
+					for (String key : segment.keySet()) {
+						termDictionary.add(key);
+					}
+				}
+				for (ScannedDocument doc : documents) {
+					recordDocument(doc.kws);
+					if (recordPositions) {
+						positionalIndex.add(doc.docFile, doc.positions);
+					}
+				}
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			while (cause instanceof ExecutionException) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof FileNotFoundException) {
+				throw (FileNotFoundException)cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while indexing", e);
+		}
+		finally {
+			updates.unlock();
+			scanners.shutdownNow();
+			mergers.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwN" ranked by BM25 instead of raw frequency, so 
+	 * that a keyword counts for more in a short document than in a long one, and rare keywords
+	 * count for more than common ones. A document's score is the sum of its BM25 scores for the 
+	 * keywords it contains; ties are broken in favor of the document name that sorts first.
+	 * 
+	 * The document lengths and frequencies are kept up to date as documents are merged, and the
+	 * upper bound of a keyword, used to skip documents that cannot make the top k, is computed
+	 * from its own occurrence list by the first ranked search for it after the index changes,
+	 * so no search scans the whole index. See Bm25Ranker.
+	 * 
+	 * @param keywords Keywords to search for
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of score. If there are no matches, returns null.
+	 */
+	public ArrayList<String> rankedSearch(List<String> keywords, int k) {
+		
+		SearchMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		ArrayList<String> kws = new ArrayList<String>(keywords.size());
+		for (String kw : keywords) {
+			kws.add(kw.toLowerCase());
+		}
+		lock.readLock().lock();
+		try {
+			Bm25Ranker r = ranker;
+			if (r == null) {
+				// racing readers build equal rankers, either one will do
+				r = new Bm25Ranker(keywordsIndex, documentLengths, totalLength);
+				ranker = r;
+			}
+			return r.search(kws, k);
+		}
+		finally {
+			lock.readLock().unlock();
+			if (m != null) {
+				m.rankedQuery(System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Search result for "pattern1 or pattern2 or ... or patternN", where each pattern is a keyword,
+	 * a prefix such as "wild*", or a wildcard pattern with '*' (any characters) and '?' (any one
+	 * character), such as "w?ld*ness". Each pattern stands for all the keywords it matches, and a
+	 * document is ranked by its highest frequency for any of them, as in topKSearch. Ties are
+	 * broken in favor of the earlier pattern, and then of the keyword that sorts first.
+	 * 
+	 * Patterns are expanded through a sorted dictionary of the keywords (see TermDictionary),
+	 * in time logarithmic in the number of keywords for the part of a pattern before its first
+	 * wildcard. The occurrence lists of all the matches are then merged by TopKMerger.
+	 * 
+	 * @param patterns Patterns to search for, in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of frequency. If there are no matches, returns null.
+	 */
+	public ArrayList<String> wildcardSearch(List<String> patterns, int k) {
+		
+		lock.readLock().lock();
+		try {
+			ArrayList<String> terms = new ArrayList<String>();
+			for (String pattern : patterns) {
+				terms.addAll(termDictionary.matching(pattern.toLowerCase()));
+			}
+			return TopKMerger.topK(indexPostings, terms, k);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Turns on caching of the results of top5search and topKSearch, in a cache that holds the
+	 * given number of results and evicts the least recently used one. A cached result is dropped
+	 * as soon as the occurrences of any of its keywords change. Calling this again replaces the
+	 * cache with an empty one.
+	 * 
+	 * @param capacity Maximum number of cached results
+	 * @return The cache, for its hit and miss counts
+	 */
+	public QueryCache enableQueryCache(int capacity) {
+		QueryCache cache = new QueryCache(capacity);
+		lock.writeLock().lock();
+		try {
+			queryCache = cache;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		return cache;
+	}
+	
+	/**
+	 * Returns the query cache, or null if it is not enabled.
+	 * 
+	 * @return The query cache
+	 */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+	
+	/**
+	 * Turns on collection of timings and counts from indexing and searching. Calling this 
+	 * again keeps the metrics already collected.
+	 * 
+	 * @return The metrics, which can also be registered with JMX
+	 */
+	public SearchMetrics enableMetrics() {
+		updates.lock();
+		try {
+			if (metrics == null) {
+				metrics = new SearchMetrics(this);
+			}
+			return metrics;
+		}
+		finally {
+			updates.unlock();
+		}
+	}
+	
+	/**
+	 * Turns off collection of timings and counts. The metrics keep what they collected.
+	 */
+	public void disableMetrics() {
+		metrics = null;
+	}
+	
+	/**
+	 * Turns on recording of keyword positions, for booleanSearch. Only documents indexed 
+	 * after this call are in the positional index, so it should be called before makeIndex.
+	 */
+	public void enablePositions() {
+		updates.lock();
+		try {
+			if (positionalIndex == null) {
+				positionalIndex = new PositionalIndex();
+			}
+		}
+		finally {
+			updates.unlock();
+		}
+	}
+	
+	/**
+	 * Search result for a query made of keywords, quoted phrases and excluded keywords, such as
+	 *     alice AND rabbit NOT queen "white rabbit"
+	 * A document is in the result set if it contains all the keywords and phrases, and none of the 
+	 * keywords after NOT (or prefixed with '-'). AND is implied between terms and may be left out. 
+	 * Words are turned into keywords by getKeyword; noise words are ignored, except inside phrases where
+	 * they match any word. 
+	 * 
+	 * Results are ranked by the sum of the frequencies of the keywords plus the number of times each 
+	 * phrase occurs, ties broken in favor of the document indexed first. Positions must have been
+	 * enabled with enablePositions before the documents were indexed.
+	 * 
+	 * @param query Query
+	 * @return List of matching documents, in rank order. If there are no matches, returns null.
+	 * @throws IllegalStateException If positions are not enabled
+	 * @throws IllegalArgumentException If the query has no keywords to match, or is malformed
+	 */
+	public ArrayList<String> booleanSearch(String query) {
+		
+		SearchMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		PositionalIndex positions = positionalIndex;
+		if (positions == null) {
+			throw new IllegalStateException("Positions are not enabled");
+		}
+		
+		ArrayList<String> keywords = new ArrayList<String>();
+		ArrayList<List<String>> phrases = new ArrayList<List<String>>();
+		ArrayList<String> excluded = new ArrayList<String>();
+		
+		int i = 0, n = query.length();
+		boolean not = false;
+		while (i < n) {
+			char c = query.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			}
+			else if (c == '"') {
+				int end = query.indexOf('"', i+1);
+				if (end == -1) {
+					throw new IllegalArgumentException("Unterminated phrase in: " + query);
+				}
+				if (not) {
+					throw new IllegalArgumentException("NOT of a phrase is not supported: " + query);
+				}
+				ArrayList<String> phrase = new ArrayList<String>();
+				for (String word : query.substring(i+1, end).trim().split("\\s+")) {
+					String kw = word.isEmpty() ? null : getKeyword(word);
+					// words at either end that are not keywords do not constrain the phrase
+					if (kw != null || !phrase.isEmpty()) {
+						phrase.add(kw);
+					}
+				}
+				while (!phrase.isEmpty() && phrase.get(phrase.size()-1) == null) {
+					phrase.remove(phrase.size()-1);
+				}
+				if (!phrase.isEmpty()) {
+					phrases.add(phrase);
+				}
+				i = end+1;
+			}
+			else {
+				int end = i;
+				while (end < n && !Character.isWhitespace(query.charAt(end))) {
+					end++;
+				}
+				String word = query.substring(i, end);
+				i = end;
+				if (word.equals("AND")) {
+					continue;
+				}
+				if (word.equals("NOT")) {
+					not = true;
+					continue;
+				}
+				if (word.equals("OR")) {
+					throw new IllegalArgumentException("OR is not supported, use topKSearch: " + query);
+				}
+				boolean minus = word.startsWith("-");
+				String kw = getKeyword(minus ? word.substring(1) : word);
+				if (kw != null) {
+					if (not || minus) {
+						excluded.add(kw);
+					}
+					else {
+						keywords.add(kw);
+					}
+				}
+				not = false;
+			}
+		}
+		
+		lock.readLock().lock();
+		try {
+			return positions.search(keywords, phrases, excluded);
+		}
+		finally {
+			lock.readLock().unlock();
+			if (m != null) {
+				m.booleanQuery(System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the keywordsIndex to an index file, which can be searched with MappedIndex 
+	 * without indexing the documents again.
+	 * 
+	 * @param indexFile Name of the index file to be written
+	 * @throws IOException If the index file cannot be written
+	 */
+	public void saveIndex(String indexFile) 
+	throws IOException {
+		lock.readLock().lock();
+		try {
+			IndexFile.save(keywordsIndex, indexFile);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns a CompactIndex with the same occurrences as the keywordsIndex, in the same order,
+	 * for serving top5search and topKSearch in less memory once the documents no longer change.
+	 * The copy is taken under the read lock, so it holds no partly merged document.
+	 * 
+	 * @return Compact copy of the index
+	 */
+	public CompactIndex compactIndex() {
+		lock.readLock().lock();
+		try {
+			return CompactIndex.from(keywordsIndex);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
 	}
 	
 	/**
@@ -243,66 +1034,132 @@ public class LittleSearchEngine {
 	 */
 	public ArrayList<String> top5search(String kw1, String kw2) {
 		
-		ArrayList<String> top5 = new ArrayList<String>();
-		kw1 = kw1.toLowerCase();
-		kw2 = kw2.toLowerCase();
-		ArrayList<Occurrence> list1 = keywordsIndex.get(kw1);
-		ArrayList<Occurrence> list2 = keywordsIndex.get(kw2);
+		return topKSearch(Arrays.asList(kw1, kw2), 5);
+	}
+	
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwN", limited to the top k documents. A document 
+	 * is in the result set if any of the keywords occurs in it, and is ranked by its highest 
+	 * frequency for any of them. Ties are broken in favor of the earlier keyword, as in
+	 * top5search, and then in favor of the occurrence that comes first in the keyword's list.
+	 * 
+	 * The occurrence lists are merged through a heap by TopKMerger, which stops as soon as 
+	 * k documents have been found. If the query cache is enabled, the result is looked up
+	 * there first, and cached if it was not.
+	 * 
+	 * @param keywords Keywords to search for, in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @return List of documents in which any of the keywords occurs, arranged in descending order 
+	 *         of frequencies, limited to k documents. If there are no matches, returns null.
+	 */
+	public ArrayList<String> topKSearch(List<String> keywords, int k) {
 		
-		if((kw1 == null && kw2 == null)||(!keywordsIndex.containsKey(kw1) && !keywordsIndex.containsKey(kw2))||(keywordsIndex.isEmpty())){
-			return null;
+		SearchMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		ArrayList<String> kws = new ArrayList<String>(keywords.size());
+		for (String kw : keywords) {
+			kws.add(kw.toLowerCase());
 		}
-		
-		else if(keywordsIndex.containsKey(kw1) && !keywordsIndex.containsKey(kw2)){
-			for(int i = 0; i < list1.size(); i++){
-				Occurrence occurrence = list1.get(i);
-				if(top5.size() < 5){
-					top5.add(occurrence.document);
-				}
+		lock.readLock().lock();
+		try {
+			QueryCache cache = queryCache;
+			if (cache == null) {
+				return TopKMerger.topK(indexPostings, kws, k);
+			}
+			ArrayList<String> result = cache.get(kws, k);
+			if (result == QueryCache.MISS) {
+				result = TopKMerger.topK(indexPostings, kws, k);
+				cache.put(kws, k, result);
 			}
-			return top5;
+			return result;
 		}
-		else if(keywordsIndex.containsKey(kw2) && !keywordsIndex.containsKey(kw1)){
-			for(int i = 0; i < list2.size(); i++){
-				Occurrence occurrence = list2.get(i);
-				if(top5.size() < 5){
-					top5.add(occurrence.document);
-				}
+		finally {
+			lock.readLock().unlock();
+			if (m != null) {
+				m.topKQuery(System.nanoTime() - start);
 			}
-			return top5;
 		}
-		else {
-			ArrayList<Occurrence> occs = new ArrayList<>();
-			occs.addAll(list1);
-			occs.addAll(list2);
-			for(int count = 0; count < 5 && !occs.isEmpty(); count++){
-				int prev = -1;
-				for(int ptr = 0; ptr < occs.size() && occs.get(ptr) != null; ptr++){
-					if (prev == -1){
-						if (!top5.contains(occs.get(ptr).document)) {
-							prev = ptr;
-						}
-					}
-					else if (occs.get(ptr).frequency > occs.get(prev).frequency){
-						if(!top5.contains(occs.get(ptr).document)) {
-							prev = ptr;
-						}
-					}
-					else if (occs.get(ptr).frequency == occs.get(prev).frequency){
-						if(list1.contains(occs.get(ptr))){
-							if(!top5.contains(occs.get(ptr).document)) {
-								prev = ptr;
-							}
-						}
-					}
+	}
+	
+	/**
+	 * Search results for many "kw1 or kw2 or ... or kwN" queries at once, each the same as 
+	 * topKSearch would return. The occurrence list of each distinct keyword in the batch is 
+	 * read once for all the queries that have it, and the queries are merged in parallel on
+	 * the common fork-join pool. See BatchSearch.
+	 * 
+	 * The query cache, if enabled, is not used.
+	 * 
+	 * @param queries Queries, each a list of keywords in order of precedence
+	 * @param k Maximum number of documents in each result
+	 * @return The result of each query, in the order of the queries; null for a query with no matches
+	 */
+	public ArrayList<ArrayList<String>> batchSearch(List<? extends List<String>> queries, int k) {
+		
+		ArrayList<ArrayList<String>> kws = new ArrayList<ArrayList<String>>(queries.size());
+		for (List<String> query : queries) {
+			ArrayList<String> q = new ArrayList<String>(query.size());
+			for (String kw : query) {
+				q.add(kw.toLowerCase());
+			}
+			kws.add(q);
+		}
+		lock.readLock().lock();
+		try {
+			return BatchSearch.topK(indexPostings, kws, k, ForkJoinPool.commonPool());
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Opens a cursor on a copy of the occurrences of a keyword, taken under the read lock,
+	 * so the cursor can be used while the index changes. The searches of this class use
+	 * cursors on the index itself instead, as they hold the lock throughout.
+	 * 
+	 * @see lse.PostingSource#postings(java.lang.String)
+	 */
+	public PostingCursor postings(String keyword) {
+		lock.readLock().lock();
+		try {
+			ArrayList<Occurrence> occs = keywordsIndex.get(keyword);
+			return occs == null ? null : new OccurrenceCursor(new ArrayList<Occurrence>(occs));
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns copies of the first k occurrences of each of the keywords, which are all a 
+	 * top-k search can need from this index. Used to search shards of a ShardedSearchEngine.
+	 * 
+	 * @param keywords Keywords (lower case)
+	 * @param k Maximum number of occurrences of each keyword
+	 * @return The first k occurrences of each keyword, in descending order of frequency, 
+	 *         or null for a keyword that is not in the index
+	 */
+	ArrayList<ArrayList<Occurrence>> topOccurrences(List<String> keywords, int k) {
+		ArrayList<ArrayList<Occurrence>> result = new ArrayList<ArrayList<Occurrence>>(keywords.size());
+		lock.readLock().lock();
+		try {
+			for (String kw : keywords) {
+				ArrayList<Occurrence> occs = keywordsIndex.get(kw);
+				if (occs == null) {
+					result.add(null);
+					continue;
 				}
-				
-				if (prev != -1) {
-					top5.add(occs.remove(prev).document);
+				ArrayList<Occurrence> top = new ArrayList<Occurrence>(Math.min(k, occs.size()));
+				for (int i=0; i < k && i < occs.size(); i++) {
+					Occurrence occ = occs.get(i);
+					top.add(new Occurrence(occ.document, occ.frequency));
 				}
+				result.add(top);
 			}
-			return top5;
 		}
-			
+		finally {
+			lock.readLock().unlock();
+		}
+		return result;
 	}
 }
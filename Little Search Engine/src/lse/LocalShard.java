@@ -0,0 +1,42 @@
+package lse;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class is a shard held in this process, in a LittleSearchEngine of its own.
+ *
+ */
+public class LocalShard implements SearchShard {
+
+	private final LittleSearchEngine engine;
+
+	/**
+	 * Creates an empty shard.
+	 */
+	public LocalShard() {
+		engine = new LittleSearchEngine();
+	}
+
+	public void makeIndex(String docsFile, String noiseWordsFile)
+	throws IOException {
+		engine.makeIndex(docsFile, noiseWordsFile);
+	}
+
+	public void addDocument(String docFile)
+	throws IOException {
+		engine.addDocument(docFile);
+	}
+
+	public boolean removeDocument(String docFile) {
+		return engine.removeDocument(docFile);
+	}
+
+	public ArrayList<ArrayList<Occurrence>> topOccurrences(List<String> keywords, int k) {
+		return engine.topOccurrences(keywords, k);
+	}
+
+	public void close() {
+		// nothing to release
+	}
+}
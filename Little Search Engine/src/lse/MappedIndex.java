@@ -0,0 +1,232 @@
+package lse;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class searches an index file written by IndexFile directly through a memory
+ * mapping of the file. Opening an index only maps it and reads its header, and a
+ * search only decodes the occurrence lists of its keywords, so nothing is loaded
+ * into a keywordsIndex hash table.
+ *
+ * Index files are limited to 2GB, the size of a single mapping.
+ *
+ */
+public class MappedIndex implements PostingSource {
+
+	private final MappedByteBuffer buf;
+	private final int docCount, keywordCount;
+	private final int docsOffset, dictOffset, keysOffset;
+
+	/**
+	 * Document names, decoded as they are first needed.
+	 */
+	private final String[] documents;
+
+	/**
+	 * Opens an index file.
+	 *
+	 * @param indexFile Name of the index file
+	 * @throws IOException If the file cannot be read, or is not an index file
+	 */
+	public MappedIndex(String indexFile)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Index file larger than 2GB: " + indexFile);
+			}
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			raf.close();
+		}
+		if (buf.capacity() < IndexFile.HEADER_SIZE || buf.getInt(0) != IndexFile.MAGIC) {
+			throw new IOException("Not an index file: " + indexFile);
+		}
+		if (buf.getInt(4) != IndexFile.VERSION) {
+			throw new IOException("Unsupported index file version " + buf.getInt(4) + ": " + indexFile);
+		}
+		docCount = buf.getInt(8);
+		keywordCount = buf.getInt(12);
+		docsOffset = (int)buf.getLong(16);
+		dictOffset = (int)buf.getLong(24);
+		keysOffset = (int)buf.getLong(32);
+		documents = new String[docCount];
+	}
+
+	/**
+	 * Returns the number of keywords in the index.
+	 *
+	 * @return Number of keywords
+	 */
+	public int size() {
+		return keywordCount;
+	}
+
+	/**
+	 * Returns the name of a document.
+	 *
+	 * @param docId Document id
+	 * @return Document name
+	 */
+	public String document(int docId) {
+		String doc = documents[docId];
+		if (doc == null) {
+			int from = buf.getInt(docsOffset + 4*docId);
+			int to = buf.getInt(docsOffset + 4*(docId+1));
+			byte[] name = new byte[to-from];
+			for (int i=0; i < name.length; i++) {
+				name[i] = buf.get(docsOffset + 4*(docCount+1) + from + i);
+			}
+			doc = new String(name, StandardCharsets.UTF_8);
+			// racing threads decode equal strings, either one will do
+			documents[docId] = doc;
+		}
+		return doc;
+	}
+
+	/**
+	 * Finds a keyword in the dictionary by binary search.
+	 *
+	 * @param keyword Keyword
+	 * @return Offset of the keyword's postings in the file, or -1 if it is not in the index
+	 */
+	int postingsOffset(String keyword) {
+		byte[] key = keyword.getBytes(StandardCharsets.UTF_8);
+		int lo = 0, hi = keywordCount-1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int entry = dictOffset + mid*IndexFile.ENTRY_SIZE;
+			int from = keysOffset + buf.getInt(entry);
+			int to = keysOffset + buf.getInt(entry + IndexFile.ENTRY_SIZE);
+			int c = compareKey(from, to, key);
+			if (c == 0) {
+				return (int)buf.getLong(entry + 4);
+			}
+			else if (c < 0) {
+				lo = mid+1;
+			}
+			else {
+				hi = mid-1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the occurrences of a keyword, in descending order of frequency.
+	 *
+	 * @param keyword Keyword (lower case)
+	 * @return Occurrences of the keyword, or null if it is not in the index
+	 */
+	public ArrayList<Occurrence> occurrences(String keyword) {
+		int offset = postingsOffset(keyword);
+		if (offset < 0) {
+			return null;
+		}
+		int[] pos = {offset};
+		int count = readVarint(pos);
+		ArrayList<Occurrence> occs = new ArrayList<Occurrence>(count);
+		int freq = 0;
+		for (int i=0; i < count; i++) {
+			int docId = readVarint(pos);
+			int delta = readVarint(pos);
+			freq = i == 0 ? delta : freq - delta;
+			occs.add(new Occurrence(document(docId), freq));
+		}
+		return occs;
+	}
+
+	/**
+	 * Search result for "kw1 or kw2", with the same result as LittleSearchEngine.top5search
+	 * on the index that was saved.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return List of documents in which either kw1 or kw2 occurs, arranged in descending order of
+	 *         frequencies. The result size is limited to 5 documents. If there are no matches,
+	 *         returns null.
+	 */
+	public ArrayList<String> top5search(String kw1, String kw2) {
+		return topKSearch(Arrays.asList(kw1, kw2), 5);
+	}
+
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwN", with the same result as 
+	 * LittleSearchEngine.topKSearch on the index that was saved.
+	 *
+	 * @param keywords Keywords to search for, in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of frequency, or null if there are no matches
+	 */
+	public ArrayList<String> topKSearch(List<String> keywords, int k) {
+		ArrayList<String> kws = new ArrayList<String>(keywords.size());
+		for (String kw : keywords) {
+			kws.add(kw.toLowerCase());
+		}
+		return TopKMerger.topK(this, kws, k);
+	}
+
+	/* (non-Javadoc)
+	 * @see lse.PostingSource#postings(java.lang.String)
+	 */
+	public PostingCursor postings(String keyword) {
+		final int offset = postingsOffset(keyword);
+		if (offset < 0) {
+			return null;
+		}
+		return new PostingCursor() {
+			final int[] pos = {offset};
+			final int count = readVarint(pos);
+			int index = -1, docId, freq;
+			public boolean next() {
+				if (++index >= count) {
+					return false;
+				}
+				docId = readVarint(pos);
+				int delta = readVarint(pos);
+				freq = index == 0 ? delta : freq - delta;
+				return true;
+			}
+			public String document() {
+				return MappedIndex.this.document(docId);
+			}
+			public int frequency() {
+				return freq;
+			}
+		};
+	}
+
+	private int compareKey(int from, int to, byte[] key) {
+		int n = Math.min(to-from, key.length);
+		for (int i=0; i < n; i++) {
+			int c = (buf.get(from+i) & 0xff) - (key[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return (to-from) - key.length;
+	}
+
+	/**
+	 * Reads a varint at pos[0], and advances pos[0] past it.
+	 */
+	private int readVarint(int[] pos) {
+		int p = pos[0];
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buf.get(p++);
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				break;
+			}
+		}
+		pos[0] = p;
+		return value;
+	}
+}
@@ -0,0 +1,114 @@
+package lse;
+
+import java.util.*;
+
+/**
+ * This class recognizes noise words straight from the characters of a token, without
+ * creating a String or computing a hash code. It is a trie of the noise words, stored as
+ * a flat transition table with one row of 26 entries (for 'a' to 'z') per state, so that
+ * a token is checked by one array read per character as it is being lower cased.
+ *
+ * Only noise words made of the letters 'a' to 'z' are in the table. Other noise words
+ * can never match a token that passes the keyword rules on the ASCII path, and are left
+ * to the noiseWords hash set.
+ *
+ */
+class NoiseWordFilter {
+
+	/**
+	 * State before any character has been read.
+	 */
+	static final int START = 0;
+
+	/**
+	 * State after a character that no noise word continues with. Stays there.
+	 */
+	static final int REJECT = -1;
+
+	/**
+	 * Filter with no noise words.
+	 */
+	static final NoiseWordFilter EMPTY = new NoiseWordFilter(Collections.<String>emptyList());
+
+	/**
+	 * next[26*state + (c-'a')] is the state after reading c, or 0 if there is none
+	 * (START is never the target of a transition).
+	 */
+	private final int[] next;
+
+	/**
+	 * Whether each state ends a noise word.
+	 */
+	private final boolean[] accept;
+
+	/**
+	 * Builds the filter for a set of noise words.
+	 *
+	 * @param words Noise words
+	 */
+	NoiseWordFilter(Collection<String> words) {
+		int chars = 0;
+		for (String word : words) {
+			if (isLowerCaseLetters(word)) {
+				chars += word.length();
+			}
+		}
+		int[] table = new int[26*(chars+1)];
+		boolean[] ends = new boolean[chars+1];
+		int states = 1;
+		for (String word : words) {
+			if (!isLowerCaseLetters(word)) {
+				continue;
+			}
+			int state = START;
+			for (int i=0; i < word.length(); i++) {
+				int t = 26*state + (word.charAt(i)-'a');
+				if (table[t] == 0) {
+					table[t] = states++;
+				}
+				state = table[t];
+			}
+			ends[state] = true;
+		}
+		next = Arrays.copyOf(table, 26*states);
+		accept = Arrays.copyOf(ends, states);
+	}
+
+	private static boolean isLowerCaseLetters(String word) {
+		if (word.isEmpty()) {
+			return false;
+		}
+		for (int i=0; i < word.length(); i++) {
+			char c = word.charAt(i);
+			if (c < 'a' || c > 'z') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads one more character of a token.
+	 *
+	 * @param state State after the previous characters
+	 * @param c Next character, from 'a' to 'z'
+	 * @return State after c
+	 */
+	int step(int state, char c) {
+		if (state == REJECT) {
+			return REJECT;
+		}
+		int s = next[26*state + (c-'a')];
+		return s == 0 ? REJECT : s;
+	}
+
+	/**
+	 * Whether the characters read to reach a state are a noise word.
+	 *
+	 * @param state State after the last character of a token
+	 * @return True if the token is a noise word
+	 */
+	boolean accepts(int state) {
+		return state != REJECT && accept[state];
+	}
+}
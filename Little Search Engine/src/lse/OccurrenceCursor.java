@@ -0,0 +1,41 @@
+package lse;
+
+import java.util.List;
+
+/**
+ * This class is a cursor on a list of Occurrence objects, such as the lists in 
+ * keywordsIndex.
+ *
+ */
+class OccurrenceCursor implements PostingCursor {
+
+	private final List<Occurrence> occs;
+	private int index = -1;
+	private Occurrence current;
+	
+	/**
+	 * Initializes a cursor before the first element of a list.
+	 * 
+	 * @param occs Occurrences in descending order of frequency
+	 */
+	OccurrenceCursor(List<Occurrence> occs) {
+		this.occs = occs;
+	}
+	
+	public boolean next() {
+		if (++index >= occs.size()) {
+			current = null;
+			return false;
+		}
+		current = occs.get(index);
+		return true;
+	}
+	
+	public String document() {
+		return current.document;
+	}
+	
+	public int frequency() {
+		return current.frequency;
+	}
+}
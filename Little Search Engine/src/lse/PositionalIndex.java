@@ -0,0 +1,492 @@
+package lse;
+
+import java.util.*;
+
+/**
+ * This class is an optional index of the word positions of keywords, which answers
+ * AND, NOT and phrase searches.
+ *
+ * Documents get ids in the order in which they are added, so the documents of every
+ * keyword are kept in ascending order of id, in an int array. AND searches intersect
+ * these arrays starting from the shortest one, finding each candidate in the longer
+ * arrays by galloping (exponential) search, so that a rare keyword AND a common keyword
+ * takes time proportional to the rare keyword's list times the log of the common one's.
+ *
+ * The positions of a keyword in a document are stored as gaps between consecutive
+ * positions, as varints, in one byte array per keyword. A position is the index of the
+ * word among all the words (tokens) of the document, noise words included.
+ *
+ * A removed document keeps its id, and is skipped by searches; adding it again gives
+ * it a new id. Once the removed ids outnumber half the documents in the index, the index
+ * is compacted: the documents left are given new ids in the same order, and the postings of
+ * the removed ones are dropped, so that the space of removed documents is reclaimed at a
+ * cost that is spread over the removals.
+ *
+ */
+public class PositionalIndex {
+
+	/**
+	 * The positions of all keywords of one document, encoded but not yet added to an index.
+	 */
+	static class Document {
+		String[] keywords;
+		int[] frequencies;
+		byte[][] positions;
+	}
+
+	/**
+	 * The documents and positions of one keyword.
+	 */
+	static class Postings {
+
+		/**
+		 * Document ids, ascending; the first size are in use.
+		 */
+		int[] docIds = new int[4];
+
+		/**
+		 * Frequency of the keyword in each document.
+		 */
+		int[] frequencies = new int[4];
+
+		/**
+		 * Offset of each document's positions in data, plus the end of data at offsets[size].
+		 */
+		int[] offsets = new int[5];
+
+		/**
+		 * Gap encoded positions.
+		 */
+		byte[] data = new byte[16];
+
+		int size;
+	}
+
+	/**
+	 * Document names, indexed by document id.
+	 */
+	ArrayList<String> documents;
+
+	/**
+	 * Current document id of each document name.
+	 */
+	HashMap<String,Integer> docIds;
+
+	/**
+	 * Ids of removed documents.
+	 */
+	BitSet removed;
+
+	/**
+	 * Number of ids in removed.
+	 */
+	int removedCount;
+
+	/**
+	 * Postings of each keyword.
+	 */
+	HashMap<String,Postings> postings;
+
+	/**
+	 * Creates an empty index.
+	 */
+	public PositionalIndex() {
+		documents = new ArrayList<String>();
+		docIds = new HashMap<String,Integer>();
+		removed = new BitSet();
+		postings = new HashMap<String,Postings>(1000, 2.0f);
+	}
+
+	/**
+	 * Encodes the positions recorded in a document's keyword table.
+	 *
+	 * @param table Keyword table, with positions
+	 * @return Encoded positions
+	 */
+	static Document encode(KeywordTable table) {
+		Document doc = new Document();
+		int n = 0;
+		for (int slot=0; slot < table.keys.length; slot++) {
+			if (table.keys[slot] != null && table.counts[slot] != KeywordTable.NOISE) {
+				n++;
+			}
+		}
+		doc.keywords = new String[n];
+		doc.frequencies = new int[n];
+		doc.positions = new byte[n][];
+		byte[] buf = new byte[64];
+		n = 0;
+		for (int slot=0; slot < table.keys.length; slot++) {
+			if (table.keys[slot] == null || table.counts[slot] == KeywordTable.NOISE) {
+				continue;
+			}
+			int count = table.counts[slot];
+			int[] pos = table.positions[slot];
+			if (buf.length < 5*count) {
+				buf = new byte[5*count];
+			}
+			int len = 0, prev = 0;
+			for (int i=0; i < count; i++) {
+				len = writeVarint(buf, len, pos[i] - prev);
+				prev = pos[i];
+			}
+			doc.keywords[n] = table.keys[slot];
+			doc.frequencies[n] = count;
+			doc.positions[n] = Arrays.copyOf(buf, len);
+			n++;
+		}
+		return doc;
+	}
+
+	/**
+	 * Adds the positions of a document to the index. If the document is already in the
+	 * index, it is removed first.
+	 *
+	 * @param docFile Document name
+	 * @param doc Encoded positions of the document
+	 */
+	public void add(String docFile, Document doc) {
+		remove(docFile);
+		int docId = documents.size();
+		documents.add(docFile);
+		docIds.put(docFile, docId);
+		for (int i=0; i < doc.keywords.length; i++) {
+			Postings p = postings.get(doc.keywords[i]);
+			if (p == null) {
+				p = new Postings();
+				postings.put(doc.keywords[i], p);
+			}
+			if (p.size == p.docIds.length) {
+				p.docIds = Arrays.copyOf(p.docIds, 2*p.size);
+				p.frequencies = Arrays.copyOf(p.frequencies, 2*p.size);
+				p.offsets = Arrays.copyOf(p.offsets, 2*p.size+1);
+			}
+			byte[] pos = doc.positions[i];
+			int end = p.offsets[p.size];
+			if (end + pos.length > p.data.length) {
+				p.data = Arrays.copyOf(p.data, Math.max(2*p.data.length, end + pos.length));
+			}
+			System.arraycopy(pos, 0, p.data, end, pos.length);
+			p.docIds[p.size] = docId;
+			p.frequencies[p.size] = doc.frequencies[i];
+			p.size++;
+			p.offsets[p.size] = end + pos.length;
+		}
+	}
+
+	/**
+	 * Removes a document from the index.
+	 *
+	 * @param docFile Document name
+	 * @return True if the document was in the index, false otherwise
+	 */
+	public boolean remove(String docFile) {
+		Integer docId = docIds.remove(docFile);
+		if (docId == null) {
+			return false;
+		}
+		removed.set(docId);
+		removedCount++;
+		if (2*removedCount > docIds.size()) {
+			compact();
+		}
+		return true;
+	}
+
+	/**
+	 * Drops the removed documents from the postings, and numbers the documents left from 0,
+	 * in the order of their old ids.
+	 */
+	private void compact() {
+		int[] newIds = new int[documents.size()];
+		ArrayList<String> kept = new ArrayList<String>(docIds.size());
+		for (int id=0; id < documents.size(); id++) {
+			if (!removed.get(id)) {
+				newIds[id] = kept.size();
+				docIds.put(documents.get(id), kept.size());
+				kept.add(documents.get(id));
+			}
+		}
+		Iterator<Postings> it = postings.values().iterator();
+		while (it.hasNext()) {
+			Postings p = it.next();
+			int n = 0, end = 0;
+			for (int i=0; i < p.size; i++) {
+				if (removed.get(p.docIds[i])) {
+					continue;
+				}
+				int from = p.offsets[i], len = p.offsets[i+1] - from;
+				System.arraycopy(p.data, from, p.data, end, len);
+				p.docIds[n] = newIds[p.docIds[i]];
+				p.frequencies[n] = p.frequencies[i];
+				p.offsets[n] = end;
+				end += len;
+				n++;
+			}
+			if (n == 0) {
+				it.remove();
+				continue;
+			}
+			p.offsets[n] = end;
+			p.size = n;
+			if (4*n < p.docIds.length) {
+				p.docIds = Arrays.copyOf(p.docIds, 2*n);
+				p.frequencies = Arrays.copyOf(p.frequencies, 2*n);
+				p.offsets = Arrays.copyOf(p.offsets, 2*n+1);
+			}
+			if (4*end < p.data.length) {
+				p.data = Arrays.copyOf(p.data, Math.max(16, 2*end));
+			}
+		}
+		documents = kept;
+		removed.clear();
+		removedCount = 0;
+	}
+
+	/**
+	 * Finds the documents that contain all the given keywords and phrases, and none of
+	 * the excluded keywords. Documents are ranked by the sum of the frequencies of the
+	 * keywords plus the number of matches of each phrase, ties broken in favor of the
+	 * document that was indexed first.
+	 *
+	 * Each phrase is a list of keywords; a null entry stands for a word that is not a
+	 * keyword (such as a noise word), which matches any word at that position.
+	 *
+	 * @param keywords Keywords that must all occur (lower case)
+	 * @param phrases Phrases that must all occur
+	 * @param excluded Keywords that must not occur (lower case)
+	 * @return Matching documents in rank order, or null if there are none
+	 */
+	public ArrayList<String> search(List<String> keywords, List<List<String>> phrases, List<String> excluded) {
+
+		// every keyword, of the phrases too, must be in the document
+		ArrayList<Postings> required = new ArrayList<Postings>();
+		for (String kw : keywords) {
+			Postings p = postings.get(kw);
+			if (p == null) {
+				return null;
+			}
+			required.add(p);
+		}
+		ArrayList<Postings[]> phrasePostings = new ArrayList<Postings[]>();
+		for (List<String> phrase : phrases) {
+			Postings[] pp = new Postings[phrase.size()];
+			boolean any = false;
+			for (int i=0; i < pp.length; i++) {
+				if (phrase.get(i) == null) {
+					continue;
+				}
+				pp[i] = postings.get(phrase.get(i));
+				if (pp[i] == null) {
+					return null;
+				}
+				required.add(pp[i]);
+				any = true;
+			}
+			if (!any) {
+				throw new IllegalArgumentException("Phrase has no keywords: " + phrase);
+			}
+			phrasePostings.add(pp);
+		}
+		if (required.isEmpty()) {
+			throw new IllegalArgumentException("Search has no keywords to match");
+		}
+
+		Collections.sort(required, new Comparator<Postings>() {
+			public int compare(Postings a, Postings b) {
+				return a.size - b.size;
+			}
+		});
+
+		// intersect, starting from the shortest list
+		Postings shortest = required.get(0);
+		int[] candidates = new int[shortest.size];
+		int n = 0;
+		for (int i=0; i < shortest.size; i++) {
+			if (!removed.get(shortest.docIds[i])) {
+				candidates[n++] = shortest.docIds[i];
+			}
+		}
+		for (int r=1; r < required.size() && n > 0; r++) {
+			n = intersect(candidates, n, required.get(r));
+		}
+		for (String kw : excluded) {
+			Postings p = postings.get(kw);
+			if (p != null) {
+				n = subtract(candidates, n, p);
+			}
+		}
+
+		// score, checking phrases
+		ArrayList<int[]> scored = new ArrayList<int[]>();
+		for (int c=0; c < n; c++) {
+			int docId = candidates[c];
+			int score = 0;
+			for (String kw : keywords) {
+				Postings p = postings.get(kw);
+				score += p.frequencies[gallop(p.docIds, 0, p.size, docId)];
+			}
+			boolean matched = true;
+			for (Postings[] pp : phrasePostings) {
+				int matches = phraseMatches(pp, docId);
+				if (matches == 0) {
+					matched = false;
+					break;
+				}
+				score += matches;
+			}
+			if (matched) {
+				scored.add(new int[] {score, docId});
+			}
+		}
+		if (scored.isEmpty()) {
+			return null;
+		}
+		Collections.sort(scored, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return a[0] != b[0] ? b[0] - a[0] : a[1] - b[1];
+			}
+		});
+		ArrayList<String> result = new ArrayList<String>(scored.size());
+		for (int[] s : scored) {
+			result.add(documents.get(s[1]));
+		}
+		return result;
+	}
+
+	/**
+	 * Keeps the candidates that are in the given postings.
+	 *
+	 * @param candidates Document ids, ascending
+	 * @param n Number of candidates
+	 * @param p Postings
+	 * @return Number of candidates kept, at the front of the array
+	 */
+	private static int intersect(int[] candidates, int n, Postings p) {
+		int kept = 0, from = 0;
+		for (int i=0; i < n && from < p.size; i++) {
+			from = gallop(p.docIds, from, p.size, candidates[i]);
+			if (from < p.size && p.docIds[from] == candidates[i]) {
+				candidates[kept++] = candidates[i];
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Drops the candidates that are in the given postings.
+	 *
+	 * @param candidates Document ids, ascending
+	 * @param n Number of candidates
+	 * @param p Postings
+	 * @return Number of candidates kept, at the front of the array
+	 */
+	private static int subtract(int[] candidates, int n, Postings p) {
+		int kept = 0, from = 0;
+		for (int i=0; i < n; i++) {
+			from = gallop(p.docIds, from, p.size, candidates[i]);
+			if (from >= p.size || p.docIds[from] != candidates[i]) {
+				candidates[kept++] = candidates[i];
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Finds the first position at or after from whose value is at least target, by
+	 * doubling the step until it is passed, and then binary searching the last step.
+	 *
+	 * @param a Ascending values
+	 * @param from Where to start
+	 * @param to End of the values
+	 * @param target Value to look for
+	 * @return Index of the first value at least target, or to if there is none
+	 */
+	static int gallop(int[] a, int from, int to, int target) {
+		int lo = from, step = 1, hi = from;
+		while (hi < to && a[hi] < target) {
+			lo = hi+1;
+			hi = from + step;
+			step <<= 1;
+		}
+		hi = Math.min(hi, to);
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < target) {
+				lo = mid+1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Counts the matches of a phrase in a document that contains all its keywords.
+	 *
+	 * @param pp Postings of the words of the phrase, null for words that match anything
+	 * @param docId Document id
+	 * @return Number of positions at which the phrase starts
+	 */
+	private static int phraseMatches(Postings[] pp, int docId) {
+		int[][] positions = new int[pp.length][];
+		int first = -1;
+		for (int i=0; i < pp.length; i++) {
+			if (pp[i] != null) {
+				positions[i] = decode(pp[i], gallop(pp[i].docIds, 0, pp[i].size, docId));
+				if (first == -1) {
+					first = i;
+				}
+			}
+		}
+		int matches = 0;
+		for (int start : positions[first]) {
+			int origin = start - first;
+			boolean match = origin >= 0;
+			for (int i=first+1; i < pp.length && match; i++) {
+				if (positions[i] != null) {
+					match = Arrays.binarySearch(positions[i], origin + i) >= 0;
+				}
+			}
+			if (match) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Decodes the positions of a keyword in one of its documents.
+	 *
+	 * @param p Postings of the keyword
+	 * @param index Index of the document in the postings
+	 * @return Positions, ascending
+	 */
+	private static int[] decode(Postings p, int index) {
+		int[] positions = new int[p.frequencies[index]];
+		int pos = p.offsets[index], prev = 0;
+		for (int i=0; i < positions.length; i++) {
+			int value = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = p.data[pos++];
+				value |= (b & 0x7f) << shift;
+				if (b >= 0) {
+					break;
+				}
+			}
+			prev += value;
+			positions[i] = prev;
+		}
+		return positions;
+	}
+
+	private static int writeVarint(byte[] buf, int pos, int value) {
+		while ((value & ~0x7f) != 0) {
+			buf[pos++] = (byte)((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buf[pos++] = (byte)value;
+		return pos;
+	}
+}
@@ -0,0 +1,33 @@
+package lse;
+
+/**
+ * This interface reads the occurrences of one keyword, one at a time, in descending 
+ * order of frequency. It lets a search read an occurrence list without materializing
+ * it as Occurrence objects, whichever way the index stores it.
+ * 
+ * A cursor starts before the first occurrence.
+ *
+ */
+public interface PostingCursor {
+
+	/**
+	 * Moves to the next occurrence.
+	 * 
+	 * @return True if there is a next occurrence, false if the list is exhausted
+	 */
+	boolean next();
+	
+	/**
+	 * Returns the document of the current occurrence.
+	 * 
+	 * @return Document name
+	 */
+	String document();
+	
+	/**
+	 * Returns the frequency of the current occurrence.
+	 * 
+	 * @return Frequency
+	 */
+	int frequency();
+}
@@ -0,0 +1,18 @@
+package lse;
+
+/**
+ * This interface is an index that can be searched by TopKMerger: it opens a cursor on
+ * the occurrence list of a keyword.
+ *
+ */
+public interface PostingSource {
+
+	/**
+	 * Opens a cursor on the occurrences of a keyword.
+	 * 
+	 * @param keyword Keyword (lower case)
+	 * @return Cursor on the keyword's occurrences in descending order of frequency,
+	 *         or null if the keyword is not in the index
+	 */
+	PostingCursor postings(String keyword);
+}
@@ -0,0 +1,136 @@
+package lse;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class is a shard held in a separate local process running ShardServer, with its own
+ * heap. Requests are sent over the process's standard input and output, one at a time.
+ *
+ */
+public class ProcessShard implements SearchShard {
+
+	private final Process process;
+	private final BufferedReader in;
+	private final PrintWriter out;
+
+	/**
+	 * Starts a ShardServer process, on the same Java runtime and class path as this one.
+	 *
+	 * @param jvmOptions Options for the new Java runtime, such as "-Xmx2g"
+	 * @throws IOException If the process cannot be started
+	 */
+	public ProcessShard(String... jvmOptions)
+	throws IOException {
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(Arrays.asList(jvmOptions));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ShardServer.class.getName());
+		process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+		out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), "UTF-8")));
+	}
+
+	/**
+	 * Sends a request, and reads the first line of the response.
+	 *
+	 * @return The fields of the response after OK
+	 * @throws IOException If the request failed, or the process has gone away
+	 */
+	private String[] request(String... fields)
+	throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (String field : fields) {
+			if (field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0) {
+				throw new IllegalArgumentException("Tab or newline in request: " + field);
+			}
+			if (sb.length() > 0) {
+				sb.append('\t');
+			}
+			sb.append(field);
+		}
+		out.println(sb);
+		out.flush();
+		if (out.checkError()) {
+			throw new IOException("Shard process is not running");
+		}
+		String line = in.readLine();
+		if (line == null) {
+			throw new IOException("Shard process exited");
+		}
+		String[] response = line.split("\t", -1);
+		if (response[0].equals("ERR")) {
+			String message = response.length > 2 ? response[2] : "Shard request failed";
+			if (response.length > 1 && response[1].equals("NOTFOUND")) {
+				throw new FileNotFoundException(message);
+			}
+			throw new IOException(message);
+		}
+		return Arrays.copyOfRange(response, 1, response.length);
+	}
+
+	public synchronized void makeIndex(String docsFile, String noiseWordsFile)
+	throws IOException {
+		request("INDEX", new File(docsFile).getAbsolutePath(), new File(noiseWordsFile).getAbsolutePath());
+	}
+
+	public synchronized void addDocument(String docFile)
+	throws IOException {
+		request("ADD", docFile);
+	}
+
+	public synchronized boolean removeDocument(String docFile)
+	throws IOException {
+		return Boolean.parseBoolean(request("REMOVE", docFile)[0]);
+	}
+
+	public synchronized ArrayList<ArrayList<Occurrence>> topOccurrences(List<String> keywords, int k)
+	throws IOException {
+		String[] fields = new String[keywords.size()+2];
+		fields[0] = "TOP";
+		fields[1] = Integer.toString(k);
+		for (int i=0; i < keywords.size(); i++) {
+			fields[i+2] = keywords.get(i);
+		}
+		request(fields);
+
+		ArrayList<ArrayList<Occurrence>> result = new ArrayList<ArrayList<Occurrence>>(keywords.size());
+		for (int i=0; i < keywords.size(); i++) {
+			String line = in.readLine();
+			if (line == null) {
+				throw new IOException("Shard process exited");
+			}
+			if (line.equals("-")) {
+				result.add(null);
+				continue;
+			}
+			ArrayList<Occurrence> occs = new ArrayList<Occurrence>();
+			if (!line.isEmpty()) {
+				String[] entries = line.split("\t");
+				for (int j=0; j+1 < entries.length; j += 2) {
+					occs.add(new Occurrence(entries[j], Integer.parseInt(entries[j+1])));
+				}
+			}
+			result.add(occs);
+		}
+		return result;
+	}
+
+	/**
+	 * Asks the shard process to exit, and waits for it.
+	 */
+	public synchronized void close()
+	throws IOException {
+		out.println("QUIT");
+		out.close();
+		try {
+			process.waitFor();
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+		}
+		in.close();
+	}
+}
@@ -0,0 +1,286 @@
+package lse;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is a bounded cache of search results, keyed on the normalized query: its
+ * lower case keywords, in order, and the result size k. When the cache is full, the
+ * least recently used result is evicted.
+ *
+ * The cache also keeps, for each keyword, the queries it is part of, so that when a
+ * keyword's occurrences change, exactly the results that may have changed are dropped.
+ *
+ * Lookups take no lock: the results are in a concurrent hash table, and the counters are
+ * LongAdders. A lock guards only the order of use, the queries of each keyword, and
+ * the changes that keep them in step with the results. A hit moves its result to the back
+ * of the order only if it gets that lock without waiting, so under contention the
+ * eviction order is approximate.
+ *
+ */
+public class QueryCache {
+
+	/**
+	 * Returned by get when the query is not in the cache. Never a search result itself.
+	 */
+	static final ArrayList<String> MISS = new ArrayList<String>(0);
+
+	/**
+	 * Stored for a query that had no matches, since the search result for that is null.
+	 */
+	private static final ArrayList<String> NO_MATCHES = new ArrayList<String>(0);
+
+	/**
+	 * A cached result, with the keywords of its query.
+	 */
+	private static class Entry {
+		List<String> keywords;
+		ArrayList<String> result;
+
+		Entry(List<String> keywords, ArrayList<String> result) {
+			this.keywords = keywords;
+			this.result = result;
+		}
+	}
+
+	private final int capacity;
+
+	/**
+	 * Cached results by query key.
+	 */
+	private final ConcurrentHashMap<String,Entry> entries;
+
+	/**
+	 * The same results in order of use, least recently used first. Guarded by lock.
+	 */
+	private final LinkedHashMap<String,Entry> order;
+
+	/**
+	 * Keys of the cached queries that each keyword is part of. Guarded by lock.
+	 */
+	private final HashMap<String,HashSet<String>> queriesByKeyword;
+
+	/**
+	 * Held by every change to the cache, and by a hit to move its result in the order.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(),
+			evictions = new LongAdder(), invalidations = new LongAdder();
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity Maximum number of results held
+	 * @throws IllegalArgumentException If capacity is not positive
+	 */
+	public QueryCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		entries = new ConcurrentHashMap<String,Entry>();
+		order = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+				if (size() <= QueryCache.this.capacity) {
+					return false;
+				}
+				entries.remove(eldest.getKey());
+				unlink(eldest.getKey(), eldest.getValue());
+				evictions.increment();
+				return true;
+			}
+		};
+		queriesByKeyword = new HashMap<String,HashSet<String>>();
+	}
+
+	/**
+	 * Builds the key of a query.
+	 */
+	private static String key(List<String> keywords, int k) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(k);
+		for (String kw : keywords) {
+			sb.append(' ').append(kw);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Looks up the result of a query.
+	 *
+	 * @param keywords Keywords of the query (lower case), in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @return A copy of the cached result, null if the query had no matches, or MISS if the
+	 *         query is not in the cache
+	 */
+	public ArrayList<String> get(List<String> keywords, int k) {
+		String key = key(keywords, k);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses.increment();
+			return MISS;
+		}
+		hits.increment();
+		if (lock.tryLock()) {
+			try {
+				order.get(key);
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		return entry.result == NO_MATCHES ? null : new ArrayList<String>(entry.result);
+	}
+
+	/**
+	 * Caches the result of a query, evicting the least recently used result if the cache is full.
+	 *
+	 * @param keywords Keywords of the query (lower case), in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @param result Search result, or null if there were no matches
+	 */
+	public void put(List<String> keywords, int k, ArrayList<String> result) {
+		String key = key(keywords, k);
+		List<String> kws = new ArrayList<String>(keywords);
+		Entry entry = new Entry(kws, result == null ? NO_MATCHES : new ArrayList<String>(result));
+		lock.lock();
+		try {
+			Entry old = order.remove(key);
+			if (old != null) {
+				unlink(key, old);
+			}
+			entries.put(key, entry);
+			order.put(key, entry);
+			for (String kw : kws) {
+				HashSet<String> keys = queriesByKeyword.get(kw);
+				if (keys == null) {
+					keys = new HashSet<String>();
+					queriesByKeyword.put(kw, keys);
+				}
+				keys.add(key);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Drops every cached result of a query that has any of the given keywords.
+	 *
+	 * @param keywords Keywords whose occurrences have changed
+	 */
+	public void invalidate(Collection<String> keywords) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		lock.lock();
+		try {
+			for (String kw : keywords) {
+				HashSet<String> keys = queriesByKeyword.remove(kw);
+				if (keys == null) {
+					continue;
+				}
+				for (String key : keys) {
+					Entry entry = order.remove(key);
+					if (entry != null) {
+						entries.remove(key);
+						unlink(key, entry);
+						invalidations.increment();
+					}
+				}
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Drops all cached results.
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			invalidations.add(order.size());
+			order.clear();
+			entries.clear();
+			queriesByKeyword.clear();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a query key from the keyword lists of its keywords.
+	 */
+	private void unlink(String key, Entry entry) {
+		for (String kw : entry.keywords) {
+			HashSet<String> keys = queriesByKeyword.get(kw);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					queriesByKeyword.remove(kw);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of results in the cache.
+	 *
+	 * @return Number of cached results
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found their query in the cache.
+	 *
+	 * @return Number of hits
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that did not find their query in the cache.
+	 *
+	 * @return Number of misses
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of results evicted to make room for others.
+	 *
+	 * @return Number of evictions
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the number of results dropped because the index changed.
+	 *
+	 * @return Number of invalidations
+	 */
+	public long invalidations() {
+		return invalidations.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "size=" + entries.size() + "/" + capacity + " hits=" + hits.sum() + " misses=" + misses.sum()
+				+ " evictions=" + evictions.sum() + " invalidations=" + invalidations.sum();
+	}
+}
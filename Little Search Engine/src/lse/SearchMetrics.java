@@ -0,0 +1,239 @@
+package lse;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+
+/**
+ * This class collects timings and counts from the hot paths of a LittleSearchEngine:
+ * document scanning, merging and insertLastOccurrence on the indexing side, and the
+ * latency of every search. Counters are LongAdders and latencies go into a
+ * LatencyHistogram, so recording never allocates or takes a lock. The engine only
+ * records while metrics are enabled; otherwise its hot paths skip the clock altogether.
+ *
+ * The shape of the index (posting list lengths and estimated memory) is computed from
+ * the index when it is asked for. The metrics can be read directly, or through JMX once
+ * registered with register().
+ *
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+
+	/**
+	 * Estimated heap bytes of an Occurrence, of an ArrayList with its hash table entry,
+	 * and of a String besides its characters, on a 64-bit JVM with compressed references.
+	 */
+	private static final int OCCURRENCE_BYTES = 24, LIST_BYTES = 24 + 16 + 32, STRING_BYTES = 24 + 16;
+
+	private final LittleSearchEngine engine;
+
+	private final LongAdder documentsScanned = new LongAdder();
+	private final LongAdder tokenizeNanos = new LongAdder();
+	private final LongAdder mergeNanos = new LongAdder();
+	private final LongAdder insertions = new LongAdder();
+	private final LongAdder insertNanos = new LongAdder();
+	private final LongAdder topKQueries = new LongAdder();
+	private final LongAdder rankedQueries = new LongAdder();
+	private final LongAdder booleanQueries = new LongAdder();
+	private final LatencyHistogram queryLatency = new LatencyHistogram();
+
+	private ObjectName name;
+
+	/**
+	 * Creates metrics for an engine. Use LittleSearchEngine.enableMetrics instead.
+	 *
+	 * @param engine Engine whose index is described
+	 */
+	SearchMetrics(LittleSearchEngine engine) {
+		this.engine = engine;
+	}
+
+	void scanned(long nanos) {
+		documentsScanned.increment();
+		tokenizeNanos.add(nanos);
+	}
+
+	void merged(long nanos) {
+		mergeNanos.add(nanos);
+	}
+
+	void inserted(long nanos) {
+		insertions.increment();
+		insertNanos.add(nanos);
+	}
+
+	void topKQuery(long nanos) {
+		topKQueries.increment();
+		queryLatency.record(nanos);
+	}
+
+	void rankedQuery(long nanos) {
+		rankedQueries.increment();
+		queryLatency.record(nanos);
+	}
+
+	void booleanQuery(long nanos) {
+		booleanQueries.increment();
+		queryLatency.record(nanos);
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, as lse:type=SearchMetrics,name=...
+	 *
+	 * @param instance Name that tells engines apart
+	 * @throws JMException If the name is taken or not valid
+	 */
+	public synchronized void register(String instance)
+	throws JMException {
+		ObjectName on = new ObjectName("lse:type=SearchMetrics,name=" + ObjectName.quote(instance));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+		name = on;
+	}
+
+	/**
+	 * Unregisters these metrics, if they are registered.
+	 *
+	 * @throws JMException If they cannot be unregistered
+	 */
+	public synchronized void unregister()
+	throws JMException {
+		if (name != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			name = null;
+		}
+	}
+
+	public long getDocumentsScanned() {
+		return documentsScanned.sum();
+	}
+
+	public long getTokenizeMicros() {
+		return tokenizeNanos.sum() / 1000;
+	}
+
+	public long getMergeMicros() {
+		return mergeNanos.sum() / 1000;
+	}
+
+	public long getInsertions() {
+		return insertions.sum();
+	}
+
+	public long getInsertMicros() {
+		return insertNanos.sum() / 1000;
+	}
+
+	public long getTopKQueries() {
+		return topKQueries.sum();
+	}
+
+	public long getRankedQueries() {
+		return rankedQueries.sum();
+	}
+
+	public long getBooleanQueries() {
+		return booleanQueries.sum();
+	}
+
+	public long getQueryLatencyP50Micros() {
+		return queryLatency.percentile(50) / 1000;
+	}
+
+	public long getQueryLatencyP99Micros() {
+		return queryLatency.percentile(99) / 1000;
+	}
+
+	public long getQueryLatencyP999Micros() {
+		return queryLatency.percentile(99.9) / 1000;
+	}
+
+	/**
+	 * Returns a percentile of search latency, at finer resolution than the MBean attributes.
+	 *
+	 * @param percentile Percentile, from 0 to 100
+	 * @return Latency in nanoseconds, to within 1/16
+	 */
+	public long queryLatencyNanos(double percentile) {
+		return queryLatency.percentile(percentile);
+	}
+
+	public int getKeywordCount() {
+		engine.lock.readLock().lock();
+		try {
+			return engine.keywordsIndex.size();
+		}
+		finally {
+			engine.lock.readLock().unlock();
+		}
+	}
+
+	public String getPostingLengthDistribution() {
+		long[] buckets = new long[32];
+		engine.lock.readLock().lock();
+		try {
+			for (ArrayList<Occurrence> occs : engine.keywordsIndex.values()) {
+				if (occs.isEmpty()) {
+					continue;
+				}
+				buckets[31 - Integer.numberOfLeadingZeros(occs.size())]++;
+			}
+		}
+		finally {
+			engine.lock.readLock().unlock();
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i < buckets.length; i++) {
+			if (buckets[i] == 0) {
+				continue;
+			}
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			long from = 1L << i, to = (1L << (i+1)) - 1;
+			sb.append(from);
+			if (to > from) {
+				sb.append('-').append(to);
+			}
+			sb.append(':').append(buckets[i]);
+		}
+		return sb.toString();
+	}
+
+	public long getEstimatedIndexBytes() {
+		long bytes = 0;
+		engine.lock.readLock().lock();
+		try {
+			for (Map.Entry<String,ArrayList<Occurrence>> e : engine.keywordsIndex.entrySet()) {
+				int size = e.getValue().size();
+				bytes += STRING_BYTES + 2L*e.getKey().length() + LIST_BYTES + (4L + OCCURRENCE_BYTES)*size;
+			}
+			bytes += 4L*engine.keywordsIndex.size();
+		}
+		finally {
+			engine.lock.readLock().unlock();
+		}
+		return bytes;
+	}
+
+	public void reset() {
+		documentsScanned.reset();
+		tokenizeNanos.reset();
+		mergeNanos.reset();
+		insertions.reset();
+		insertNanos.reset();
+		topKQueries.reset();
+		rankedQueries.reset();
+		booleanQueries.reset();
+		queryLatency.reset();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "documents=" + getDocumentsScanned() + " tokenize=" + getTokenizeMicros() + "us"
+				+ " merge=" + getMergeMicros() + "us insertions=" + getInsertions()
+				+ " insert=" + getInsertMicros() + "us queries=" + (getTopKQueries() + getRankedQueries() + getBooleanQueries())
+				+ " p50=" + getQueryLatencyP50Micros() + "us p99=" + getQueryLatencyP99Micros() + "us";
+	}
+}
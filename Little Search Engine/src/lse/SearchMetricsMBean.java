@@ -0,0 +1,84 @@
+package lse;
+
+/**
+ * This interface is the JMX management interface of SearchMetrics. Times are in
+ * microseconds, except where noted.
+ *
+ */
+public interface SearchMetricsMBean {
+
+	/**
+	 * @return Number of documents scanned for keywords
+	 */
+	long getDocumentsScanned();
+
+	/**
+	 * @return Total time spent scanning documents into keywords
+	 */
+	long getTokenizeMicros();
+
+	/**
+	 * @return Total time spent merging document keywords into the index, including insertions
+	 */
+	long getMergeMicros();
+
+	/**
+	 * @return Number of calls to insertLastOccurrence that had to search for a position
+	 */
+	long getInsertions();
+
+	/**
+	 * @return Total time spent in insertLastOccurrence
+	 */
+	long getInsertMicros();
+
+	/**
+	 * @return Number of frequency (topKSearch and top5search) searches
+	 */
+	long getTopKQueries();
+
+	/**
+	 * @return Number of BM25 ranked searches
+	 */
+	long getRankedQueries();
+
+	/**
+	 * @return Number of boolean and phrase searches
+	 */
+	long getBooleanQueries();
+
+	/**
+	 * @return Median latency of all searches
+	 */
+	long getQueryLatencyP50Micros();
+
+	/**
+	 * @return 99th percentile latency of all searches
+	 */
+	long getQueryLatencyP99Micros();
+
+	/**
+	 * @return 99.9th percentile latency of all searches
+	 */
+	long getQueryLatencyP999Micros();
+
+	/**
+	 * @return Number of keywords in the index
+	 */
+	int getKeywordCount();
+
+	/**
+	 * @return Number of keywords with occurrence lists of each length, by power of two range
+	 */
+	String getPostingLengthDistribution();
+
+	/**
+	 * @return Estimated bytes of heap taken by keywordsIndex
+	 */
+	long getEstimatedIndexBytes();
+
+	/**
+	 * Clears all counters and timings.
+	 */
+	void reset();
+}
@@ -0,0 +1,49 @@
+package lse;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This interface is one shard of a ShardedSearchEngine: an independent index of part of
+ * the documents, which may be held in this process or in another one.
+ *
+ */
+public interface SearchShard extends Closeable {
+
+	/**
+	 * Indexes the documents listed in a file, as LittleSearchEngine.makeIndex does.
+	 *
+	 * @param docsFile Name of file that has a list of document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws IOException If an input file is not found, or the shard cannot be reached
+	 */
+	void makeIndex(String docsFile, String noiseWordsFile) throws IOException;
+
+	/**
+	 * Adds a document to the shard, or replaces it if it is already there.
+	 *
+	 * @param docFile Name of the document file
+	 * @throws IOException If the document is not found, or the shard cannot be reached
+	 */
+	void addDocument(String docFile) throws IOException;
+
+	/**
+	 * Removes a document from the shard.
+	 *
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the shard, false otherwise
+	 * @throws IOException If the shard cannot be reached
+	 */
+	boolean removeDocument(String docFile) throws IOException;
+
+	/**
+	 * Returns the first k occurrences of each of the keywords in the shard.
+	 *
+	 * @param keywords Keywords (lower case)
+	 * @param k Maximum number of occurrences of each keyword
+	 * @return The first k occurrences of each keyword, in descending order of frequency,
+	 *         or null for a keyword that is not in the shard
+	 * @throws IOException If the shard cannot be reached
+	 */
+	ArrayList<ArrayList<Occurrence>> topOccurrences(List<String> keywords, int k) throws IOException;
+}
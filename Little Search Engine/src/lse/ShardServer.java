@@ -0,0 +1,88 @@
+package lse;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class serves one shard of a ShardedSearchEngine in a process of its own, for a
+ * ProcessShard. It reads one request per line from standard input and writes one response
+ * per request to standard output. Fields are separated by tabs, so document names may
+ * contain spaces.
+ *
+ * Requests:
+ *     INDEX docsFile noiseWordsFile       OK
+ *     ADD docFile                         OK
+ *     REMOVE docFile                      OK true|false
+ *     TOP k keyword1 ... keywordN         OK, then one line per keyword: "-" if it is not
+ *                                         in the shard, otherwise doc1 freq1 doc2 freq2 ...
+ *     QUIT
+ * A request that fails is answered with ERR, the kind of failure and a message instead of
+ * OK. The kind is NOTFOUND if a file could not be found, and FAILED otherwise.
+ *
+ */
+public class ShardServer {
+
+	public static void main(String[] args)
+	throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8")));
+		LittleSearchEngine engine = new LittleSearchEngine();
+
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] request = line.split("\t");
+			try {
+				if (request[0].equals("QUIT")) {
+					break;
+				}
+				else if (request[0].equals("INDEX")) {
+					engine.makeIndex(request[1], request[2]);
+					out.println("OK");
+				}
+				else if (request[0].equals("ADD")) {
+					engine.addDocument(request[1]);
+					out.println("OK");
+				}
+				else if (request[0].equals("REMOVE")) {
+					out.println("OK\t" + engine.removeDocument(request[1]));
+				}
+				else if (request[0].equals("TOP")) {
+					int k = Integer.parseInt(request[1]);
+					List<String> keywords = Arrays.asList(request).subList(2, request.length);
+					ArrayList<ArrayList<Occurrence>> top = engine.topOccurrences(keywords, k);
+					out.println("OK");
+					for (ArrayList<Occurrence> occs : top) {
+						if (occs == null) {
+							out.println("-");
+							continue;
+						}
+						StringBuilder sb = new StringBuilder();
+						for (Occurrence occ : occs) {
+							if (sb.length() > 0) {
+								sb.append('\t');
+							}
+							sb.append(occ.document).append('\t').append(occ.frequency);
+						}
+						out.println(sb);
+					}
+				}
+				else {
+					out.println("ERR\tFAILED\tUnknown request: " + request[0]);
+				}
+			} catch (FileNotFoundException e) {
+				out.println("ERR\tNOTFOUND\t" + message(e));
+			} catch (Exception e) {
+				out.println("ERR\tFAILED\t" + message(e));
+			}
+			out.flush();
+		}
+		out.close();
+	}
+
+	/**
+	 * Returns the message of an exception, on one line and with no tabs.
+	 */
+	private static String message(Exception e) {
+		return String.valueOf(e.getMessage()).replace('\n', ' ').replace('\t', ' ');
+	}
+}
@@ -0,0 +1,292 @@
+package lse;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class spreads an index over a number of shards, each an independent index of part
+ * of the documents, held in this process or in separate processes. A document always goes
+ * to the same shard, chosen by the hash code of its name, so the memory and indexing time
+ * of each shard grow with its share of the documents only.
+ *
+ * A search asks every shard in parallel for the first k occurrences of each keyword, merges
+ * them per keyword in descending order of frequency, and runs TopKMerger on the merged
+ * lists. That is exact: an occurrence that is not among the first k of its shard's list
+ * comes after k other documents of the same shard, so by the time the merge would reach
+ * it, k documents have been found. The result has the same frequencies as a single index
+ * of all the documents; equal frequencies from different shards are ordered by shard.
+ *
+ */
+public class ShardedSearchEngine implements Closeable {
+
+	private final SearchShard[] shards;
+
+	/**
+	 * Runs the requests to the shards.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Creates an engine over the given shards, which should be empty.
+	 *
+	 * @param shards Shards
+	 */
+	public ShardedSearchEngine(List<? extends SearchShard> shards) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("No shards");
+		}
+		this.shards = shards.toArray(new SearchShard[shards.size()]);
+		executor = Executors.newFixedThreadPool(this.shards.length, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "shard-request");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Creates an engine over n shards in this process.
+	 *
+	 * @param n Number of shards
+	 * @return Sharded engine
+	 */
+	public static ShardedSearchEngine inProcess(int n) {
+		ArrayList<SearchShard> shards = new ArrayList<SearchShard>(n);
+		for (int i=0; i < n; i++) {
+			shards.add(new LocalShard());
+		}
+		return new ShardedSearchEngine(shards);
+	}
+
+	/**
+	 * Creates an engine over n shards, each in a process of its own.
+	 *
+	 * @param n Number of shards
+	 * @param jvmOptions Options for the shard processes, such as "-Xmx2g"
+	 * @return Sharded engine
+	 * @throws IOException If a shard process cannot be started
+	 */
+	public static ShardedSearchEngine inProcesses(int n, String... jvmOptions)
+	throws IOException {
+		ArrayList<SearchShard> shards = new ArrayList<SearchShard>(n);
+		try {
+			for (int i=0; i < n; i++) {
+				shards.add(new ProcessShard(jvmOptions));
+			}
+		} catch (IOException e) {
+			for (SearchShard shard : shards) {
+				shard.close();
+			}
+			throw e;
+		}
+		return new ShardedSearchEngine(shards);
+	}
+
+	/**
+	 * Returns the shard that holds a document.
+	 *
+	 * @param docFile Name of the document file
+	 * @return Index of the shard
+	 */
+	int shardOf(String docFile) {
+		return Math.floorMod(docFile.hashCode(), shards.length);
+	}
+
+	/**
+	 * Indexes all the documents listed in a file, each in its own shard. The shards index
+	 * their documents in parallel.
+	 *
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws IOException If an input file is not found, or a shard cannot be reached
+	 */
+	public void makeIndex(String docsFile, final String noiseWordsFile)
+	throws IOException {
+		// write the list of documents of each shard to a file of its own
+		File[] lists = new File[shards.length];
+		PrintWriter[] writers = new PrintWriter[shards.length];
+		try {
+			for (int i=0; i < shards.length; i++) {
+				lists[i] = File.createTempFile("lse-shard" + i + "-", ".txt");
+				writers[i] = new PrintWriter(new BufferedWriter(new FileWriter(lists[i])));
+			}
+			Scanner sc = new Scanner(new File(docsFile));
+			while (sc.hasNext()) {
+				String docFile = sc.next();
+				writers[shardOf(docFile)].println(docFile);
+			}
+			sc.close();
+			for (PrintWriter writer : writers) {
+				writer.close();
+			}
+
+			ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for (int i=0; i < shards.length; i++) {
+				final SearchShard shard = shards[i];
+				final String list = lists[i].getPath();
+				tasks.add(new Callable<Object>() {
+					public Object call() throws IOException {
+						shard.makeIndex(list, noiseWordsFile);
+						return null;
+					}
+				});
+			}
+			invokeAll(tasks);
+		}
+		finally {
+			for (int i=0; i < shards.length; i++) {
+				if (writers[i] != null) {
+					writers[i].close();
+				}
+				if (lists[i] != null) {
+					lists[i].delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a document to its shard, or replaces it if it is already there.
+	 *
+	 * @param docFile Name of the document file
+	 * @throws IOException If the document is not found, or its shard cannot be reached
+	 */
+	public void addDocument(String docFile)
+	throws IOException {
+		shards[shardOf(docFile)].addDocument(docFile);
+	}
+
+	/**
+	 * Removes a document from its shard.
+	 *
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the index, false otherwise
+	 * @throws IOException If its shard cannot be reached
+	 */
+	public boolean removeDocument(String docFile)
+	throws IOException {
+		return shards[shardOf(docFile)].removeDocument(docFile);
+	}
+
+	/**
+	 * Search result for "kw1 or kw2", as described in LittleSearchEngine.top5search.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return Up to 5 documents in descending order of frequency, or null if there are no matches
+	 * @throws IOException If a shard cannot be reached
+	 */
+	public ArrayList<String> top5search(String kw1, String kw2)
+	throws IOException {
+		return topKSearch(Arrays.asList(kw1, kw2), 5);
+	}
+
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwN", as described in LittleSearchEngine.topKSearch.
+	 * All shards are searched in parallel.
+	 *
+	 * @param keywords Keywords to search for, in order of precedence
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of frequency, or null if there are no matches
+	 * @throws IOException If a shard cannot be reached
+	 */
+	public ArrayList<String> topKSearch(List<String> keywords, final int k)
+	throws IOException {
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+		final ArrayList<String> kws = new ArrayList<String>(keywords.size());
+		for (String kw : keywords) {
+			kws.add(kw.toLowerCase());
+		}
+
+		ArrayList<Callable<ArrayList<ArrayList<Occurrence>>>> tasks =
+				new ArrayList<Callable<ArrayList<ArrayList<Occurrence>>>>();
+		for (final SearchShard shard : shards) {
+			tasks.add(new Callable<ArrayList<ArrayList<Occurrence>>>() {
+				public ArrayList<ArrayList<Occurrence>> call() throws IOException {
+					return shard.topOccurrences(kws, k);
+				}
+			});
+		}
+		List<ArrayList<ArrayList<Occurrence>>> answers = invokeAll(tasks);
+
+		PostingCursor[] cursors = new PostingCursor[kws.size()];
+		for (int i=0; i < cursors.length; i++) {
+			ArrayList<Occurrence> merged = null;
+			for (ArrayList<ArrayList<Occurrence>> answer : answers) {
+				ArrayList<Occurrence> occs = answer.get(i);
+				if (occs != null) {
+					if (merged == null) {
+						merged = new ArrayList<Occurrence>();
+					}
+					merged.addAll(occs);
+				}
+			}
+			if (merged != null) {
+				// stable, so equal frequencies stay in shard order
+				Collections.sort(merged, new Comparator<Occurrence>() {
+					public int compare(Occurrence a, Occurrence b) {
+						return b.frequency - a.frequency;
+					}
+				});
+				cursors[i] = new OccurrenceCursor(merged);
+			}
+		}
+		return TopKMerger.topK(cursors, k);
+	}
+
+	/**
+	 * Runs tasks on the executor and waits for all of them.
+	 *
+	 * @return Results, in the order of the tasks
+	 * @throws IOException The first exception thrown by a task
+	 */
+	private <T> List<T> invokeAll(List<Callable<T>> tasks)
+	throws IOException {
+		try {
+			ArrayList<T> results = new ArrayList<T>(tasks.size());
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for shards");
+		}
+	}
+
+	/**
+	 * Closes all the shards, stopping shard processes.
+	 *
+	 * @throws IOException If a shard could not be closed
+	 */
+	public void close()
+	throws IOException {
+		executor.shutdown();
+		IOException failure = null;
+		for (SearchShard shard : shards) {
+			try {
+				shard.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
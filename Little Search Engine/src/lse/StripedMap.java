@@ -0,0 +1,195 @@
+package lse;
+
+import java.util.*;
+
+/**
+ * This class is an immutable map from strings, split into stripes: small hash tables, each
+ * holding the keys whose hash falls in it. A change is made with an Editor, which copies the
+ * array of stripes and then only the stripes it writes to, so a new version of the map
+ * shares all other stripes with the old one. The number of stripes grows with the map, to
+ * keep about STRIPE_SIZE keys in each: a change that touches k keys copies about k stripes of
+ * that size, plus the array of stripes, which is STRIPE_SIZE times smaller than a copy of
+ * the whole map.
+ *
+ */
+class StripedMap<V> {
+
+	/**
+	 * Average number of keys per stripe; the stripes are doubled past it.
+	 */
+	static final int STRIPE_SIZE = 16;
+
+	private static final int MIN_STRIPES = 16;
+
+	private final HashMap<String,V>[] stripes;
+	private final int shift;
+	private final int size;
+
+	private StripedMap(HashMap<String,V>[] stripes, int size) {
+		this.stripes = stripes;
+		this.shift = 32 - Integer.numberOfTrailingZeros(stripes.length);
+		this.size = size;
+	}
+
+	/**
+	 * Creates an empty map.
+	 */
+	StripedMap() {
+		this(newStripes(MIN_STRIPES), 0);
+	}
+
+	/**
+	 * Creates a map with all the entries of another map.
+	 *
+	 * @param map Map to be copied
+	 */
+	StripedMap(Map<String,? extends V> map) {
+		this(rehash(Collections.<HashMap<String,V>>emptyList(), map, map.size()), map.size());
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <V> HashMap<String,V>[] newStripes(int n) {
+		HashMap<String,V>[] stripes = (HashMap<String,V>[])new HashMap[n];
+		for (int i=0; i < n; i++) {
+			stripes[i] = new HashMap<String,V>();
+		}
+		return stripes;
+	}
+
+	/**
+	 * Returns new stripes, enough for size keys, holding the entries of some stripes and of
+	 * a map.
+	 */
+	private static <V> HashMap<String,V>[] rehash(List<HashMap<String,V>> from, Map<String,? extends V> map, int size) {
+		int n = MIN_STRIPES;
+		while (n < size / STRIPE_SIZE) {
+			n *= 2;
+		}
+		HashMap<String,V>[] stripes = newStripes(n);
+		int shift = 32 - Integer.numberOfTrailingZeros(n);
+		for (HashMap<String,V> stripe : from) {
+			for (Map.Entry<String,V> e : stripe.entrySet()) {
+				stripes[stripe(e.getKey(), shift)].put(e.getKey(), e.getValue());
+			}
+		}
+		for (Map.Entry<String,? extends V> e : map.entrySet()) {
+			stripes[stripe(e.getKey(), shift)].put(e.getKey(), e.getValue());
+		}
+		return stripes;
+	}
+
+	/**
+	 * Returns the stripe of a key. It is taken from the high bits of a scrambled hash, as the
+	 * HashMap of a stripe spreads its keys by the low bits.
+	 */
+	private static int stripe(String key, int shift) {
+		return (key.hashCode() * 0x9E3779B9) >>> shift;
+	}
+
+	/**
+	 * Returns the value of a key, or null if the key is not in the map.
+	 *
+	 * @param key Key
+	 * @return Value, or null
+	 */
+	V get(String key) {
+		return stripes[stripe(key, shift)].get(key);
+	}
+
+	/**
+	 * Tells whether a key is in the map.
+	 *
+	 * @param key Key
+	 * @return True if the key is in the map
+	 */
+	boolean containsKey(String key) {
+		return stripes[stripe(key, shift)].containsKey(key);
+	}
+
+	/**
+	 * Returns the number of keys in the map.
+	 *
+	 * @return Number of keys
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns all the keys in the map, in no particular order.
+	 *
+	 * @return Keys
+	 */
+	ArrayList<String> keys() {
+		ArrayList<String> keys = new ArrayList<String>(size);
+		for (HashMap<String,V> stripe : stripes) {
+			keys.addAll(stripe.keySet());
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns an editor that makes a changed copy of this map. This map is not changed.
+	 *
+	 * @return Editor
+	 */
+	Editor edit() {
+		return new Editor();
+	}
+
+	/**
+	 * Makes changes to a copy of the map, copying each stripe the first time it is written.
+	 */
+	class Editor {
+
+		private final HashMap<String,V>[] copy = stripes.clone();
+		private final boolean[] copied = new boolean[stripes.length];
+		private int count = size;
+
+		V get(String key) {
+			return copy[stripe(key, shift)].get(key);
+		}
+
+		boolean containsKey(String key) {
+			return copy[stripe(key, shift)].containsKey(key);
+		}
+
+		private HashMap<String,V> writable(String key) {
+			int i = stripe(key, shift);
+			if (!copied[i]) {
+				copy[i] = new HashMap<String,V>(copy[i]);
+				copied[i] = true;
+			}
+			return copy[i];
+		}
+
+		V put(String key, V value) {
+			V old = writable(key).put(key, value);
+			if (old == null) {
+				count++;
+			}
+			return old;
+		}
+
+		V remove(String key) {
+			if (!containsKey(key)) {
+				return null;
+			}
+			count--;
+			return writable(key).remove(key);
+		}
+
+		/**
+		 * Returns the changed map. The editor must not be used after.
+		 *
+		 * @return New map
+		 */
+		StripedMap<V> done() {
+			if (count > STRIPE_SIZE * copy.length) {
+				Map<String,V> none = Collections.emptyMap();
+				return new StripedMap<V>(rehash(Arrays.asList(copy), none, count), count);
+			}
+			return new StripedMap<V>(copy, count);
+		}
+	}
+}
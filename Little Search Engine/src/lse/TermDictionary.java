@@ -0,0 +1,134 @@
+package lse;
+
+import java.util.*;
+
+/**
+ * This class is a sorted set of all the keywords of an index, for prefix and wildcard
+ * queries. The keywords that start with a prefix are a contiguous range of the set, so a
+ * prefix is expanded in time logarithmic in the number of keywords plus the number of
+ * matches.
+ *
+ * A wildcard pattern may have '*' (any run of characters) and '?' (any one character)
+ * anywhere. Only the keywords that start with the pattern's characters before its first
+ * wildcard are tested against the whole pattern, so a pattern that starts with a
+ * wildcard has to test every keyword.
+ *
+ * The dictionary is kept up to date as keywords are added to and removed from the index,
+ * each in time logarithmic in the number of keywords. It is not thread-safe: the index
+ * changes it under its write lock, and searches read it under the read lock.
+ *
+ */
+class TermDictionary {
+
+	private final TreeSet<String> terms;
+
+	/**
+	 * Creates an empty dictionary.
+	 */
+	TermDictionary() {
+		terms = new TreeSet<String>();
+	}
+
+	/**
+	 * Adds a keyword, if it is not in the dictionary already.
+	 *
+	 * @param keyword Keyword
+	 */
+	void add(String keyword) {
+		terms.add(keyword);
+	}
+
+	/**
+	 * Removes a keyword, if it is in the dictionary.
+	 *
+	 * @param keyword Keyword
+	 */
+	void remove(String keyword) {
+		terms.remove(keyword);
+	}
+
+	/**
+	 * Returns the number of keywords.
+	 *
+	 * @return Number of keywords
+	 */
+	int size() {
+		return terms.size();
+	}
+
+	/**
+	 * Returns the keywords that start with a prefix.
+	 *
+	 * @param prefix Prefix
+	 * @return Matching keywords, in sorted order
+	 */
+	List<String> withPrefix(String prefix) {
+		// the first string after all those that start with the prefix
+		int end = prefix.length();
+		while (end > 0 && prefix.charAt(end-1) == Character.MAX_VALUE) {
+			end--;
+		}
+		SortedSet<String> range = end > 0
+				? terms.subSet(prefix, prefix.substring(0, end-1) + (char)(prefix.charAt(end-1)+1))
+				: terms.tailSet(prefix);
+		return new ArrayList<String>(range);
+	}
+
+	/**
+	 * Returns the keywords that match a pattern.
+	 *
+	 * @param pattern Keyword, or pattern with '*' and '?' wildcards
+	 * @return Matching keywords, in sorted order
+	 */
+	List<String> matching(String pattern) {
+		int wildcard = 0;
+		while (wildcard < pattern.length() && pattern.charAt(wildcard) != '*' && pattern.charAt(wildcard) != '?') {
+			wildcard++;
+		}
+		if (wildcard == pattern.length()) {
+			// no wildcard: the keyword itself, if it is there
+			return terms.contains(pattern)
+					? Collections.singletonList(pattern) : Collections.<String>emptyList();
+		}
+		List<String> candidates = withPrefix(pattern.substring(0, wildcard));
+		if (wildcard == pattern.length()-1 && pattern.charAt(wildcard) == '*') {
+			return candidates;
+		}
+		ArrayList<String> matches = new ArrayList<String>();
+		for (String term : candidates) {
+			if (matches(pattern, wildcard, term, wildcard)) {
+				matches.add(term);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Whether term[t..] matches pattern[p..]. A '*' first matches nothing, and on a mismatch
+	 * the most recent '*' takes one more character, so there is no recursion.
+	 */
+	static boolean matches(String pattern, int p, String term, int t) {
+		int star = -1, resume = 0;
+		while (t < term.length()) {
+			if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == term.charAt(t))) {
+				p++;
+				t++;
+			}
+			else if (p < pattern.length() && pattern.charAt(p) == '*') {
+				star = p++;
+				resume = t;
+			}
+			else if (star != -1) {
+				p = star+1;
+				t = ++resume;
+			}
+			else {
+				return false;
+			}
+		}
+		while (p < pattern.length() && pattern.charAt(p) == '*') {
+			p++;
+		}
+		return p == pattern.length();
+	}
+}
@@ -0,0 +1,128 @@
+package lse;
+
+import java.util.*;
+
+/**
+ * This class answers "kw1 or kw2 or ... or kwN" searches limited to the top K documents.
+ * 
+ * A document's rank is its highest frequency for any of the keywords. Since every 
+ * occurrence list is in descending order of frequency, merging the heads of the lists
+ * through a heap of size N reads occurrences in exactly the order of the result: by
+ * descending frequency, ties broken in favor of the earlier keyword, and then in favor 
+ * of the earlier occurrence in the keyword's list. The merge stops as soon as K distinct
+ * documents have been read, so a search reads at most K occurrences plus the repeats of 
+ * those documents, rather than all N lists.
+ *
+ */
+public class TopKMerger {
+	
+	// prevent instantiation
+	private TopKMerger() { }
+	
+	/**
+	 * Searches an index for the top K documents in which any of the keywords occurs.
+	 * 
+	 * @param source Index to be searched
+	 * @param keywords Keywords, in order of precedence for breaking ties (lower case)
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of frequency, each appearing once,
+	 *         or null if none of the keywords is in the index
+	 */
+	public static ArrayList<String> topK(PostingSource source, List<String> keywords, int k) {
+		PostingCursor[] cursors = new PostingCursor[keywords.size()];
+		for (int i=0; i < cursors.length; i++) {
+			cursors[i] = source.postings(keywords.get(i));
+		}
+		return topK(cursors, k);
+	}
+	
+	/**
+	 * Merges occurrence lists into the top K documents.
+	 * 
+	 * @param cursors Cursors on the occurrence lists, in order of precedence for breaking ties;
+	 *        null for a keyword that is not in the index
+	 * @param k Maximum number of documents in the result
+	 * @return Up to k documents in descending order of frequency, each appearing once,
+	 *         or null if all the cursors are null
+	 */
+	public static ArrayList<String> topK(PostingCursor[] cursors, int k) {
+		
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+		
+		// heap of indexes of the cursors that are on an occurrence
+		int[] heap = new int[cursors.length];
+		int size = 0;
+		boolean found = false;
+		for (int i=0; i < cursors.length; i++) {
+			if (cursors[i] == null) {
+				continue;
+			}
+			found = true;
+			if (cursors[i].next()) {
+				heap[size] = i;
+				siftUp(heap, size++, cursors);
+			}
+		}
+		if (!found) {
+			return null;
+		}
+		
+		ArrayList<String> top = new ArrayList<String>(Math.min(k, 16));
+		HashSet<String> seen = new HashSet<String>();
+		while (size > 0 && top.size() < k) {
+			PostingCursor cursor = cursors[heap[0]];
+			String doc = cursor.document();
+			if (seen.add(doc)) {
+				top.add(doc);
+			}
+			if (!cursor.next()) {
+				heap[0] = heap[--size];
+			}
+			siftDown(heap, size, cursors);
+		}
+		return top;
+	}
+	
+	/**
+	 * Whether the current occurrence of cursor i comes before that of cursor j.
+	 */
+	private static boolean before(PostingCursor[] cursors, int i, int j) {
+		int fi = cursors[i].frequency(), fj = cursors[j].frequency();
+		return fi > fj || (fi == fj && i < j);
+	}
+	
+	private static void siftUp(int[] heap, int pos, PostingCursor[] cursors) {
+		int item = heap[pos];
+		while (pos > 0) {
+			int parent = (pos-1)/2;
+			if (!before(cursors, item, heap[parent])) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			pos = parent;
+		}
+		heap[pos] = item;
+	}
+	
+	private static void siftDown(int[] heap, int size, PostingCursor[] cursors) {
+		if (size == 0) {
+			return;
+		}
+		int item = heap[0];
+		int pos = 0;
+		while (2*pos+1 < size) {
+			int child = 2*pos+1;
+			if (child+1 < size && before(cursors, heap[child+1], heap[child])) {
+				child++;
+			}
+			if (!before(cursors, heap[child], item)) {
+				break;
+			}
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = item;
+	}
+}
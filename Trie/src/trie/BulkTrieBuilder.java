@@ -0,0 +1,280 @@
+package trie;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class builds the same trie as Trie.buildTrie, all at once instead of one word at a
+ * time. The words are split by first letter, and the subtree of each first letter is built
+ * by its own task on a fork-join pool, top down. The words below any node are a contiguous
+ * range of the words in sorted order; unsorted words are brought into that order level by
+ * level while the nodes are built, as in a radix sort, and words given in sorted order
+ * only need their ranges found. Either way building takes time linear in the total length
+ * of the words, with no comparison sort.
+ *
+ * The nodes hold the same Indexes into the array of words as those of Trie.buildTrie, and
+ * complete to the same words; only the order of siblings may differ, which is sorted here.
+ * As in Trie.buildTrie, an internal node holds the index of the first of its words in the
+ * array, the one that put the node in the trie.
+ *
+ */
+public class BulkTrieBuilder {
+
+	// prevent instantiation
+	private BulkTrieBuilder() { }
+
+	/**
+	 * Builds a trie of all words in the input array.
+	 * The words in the input array are all lower case, and no word is a prefix of another;
+	 * a word that is a prefix of another, or a repeat, is left out, as no leaf can hold it.
+	 *
+	 * @param allWords Input array of words (lowercase) to be inserted.
+	 * @param pool Pool that builds the subtrees of the first letters
+	 * @return Root of trie with all words from the input array
+	 */
+	public static TrieNode buildTrie(String[] allWords, ForkJoinPool pool) {
+		return build(allWords, false, pool);
+	}
+
+	/**
+	 * Builds a trie of all words in an input array that is already in sorted order, which
+	 * saves sorting it.
+	 *
+	 * @param allWords Input array of words (lowercase) to be inserted, in sorted order.
+	 * @param pool Pool that builds the subtrees of the first letters
+	 * @return Root of trie with all words from the input array
+	 * @throws IllegalArgumentException If the words are not sorted
+	 */
+	public static TrieNode buildSortedTrie(String[] allWords, ForkJoinPool pool) {
+		for (int i=1; i < allWords.length; i++) {
+			if (allWords[i-1].compareTo(allWords[i]) > 0) {
+				throw new IllegalArgumentException("Words not sorted at " + i + ": "
+						+ allWords[i-1] + " > " + allWords[i]);
+			}
+		}
+		return build(allWords, true, pool);
+	}
+
+	private static TrieNode build(String[] allWords, boolean sorted, ForkJoinPool pool) {
+
+		// group the word indexes by first letter; sorted words are grouped already
+		int[] count = new int[Character.MAX_VALUE+1];
+		for (String word : allWords) {
+			if (word.length() > 0) {
+				count[word.charAt(0)]++;
+			}
+		}
+		int[][] groups = new int[count.length][];
+		for (int i=0; i < allWords.length; i++) {
+			String word = allWords[i];
+			if (word.length() == 0) {
+				continue;
+			}
+			char c = word.charAt(0);
+			if (groups[c] == null) {
+				groups[c] = new int[count[c]];
+				count[c] = 0;
+			}
+			groups[c][count[c]++] = i;
+		}
+
+		ArrayList<Subtree> subtrees = new ArrayList<>();
+		for (int[] group : groups) {
+			if (group != null) {
+				Subtree subtree = new Subtree(allWords, group, sorted);
+				subtrees.add(subtree);
+				pool.execute(subtree);
+			}
+		}
+
+		TrieNode root = new TrieNode(null, null, null);
+		TrieNode last = null;
+		for (Subtree subtree : subtrees) {
+			TrieNode node = subtree.join();
+			if (last == null) {
+				root.firstChild = node;
+			}
+			else {
+				last.sibling = node;
+			}
+			last = node;
+		}
+		return root;
+	}
+
+	/**
+	 * Builds the subtree of the words that start with one letter.
+	 */
+	private static class Subtree extends RecursiveTask<TrieNode> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String[] allWords;
+		private final int[] group;
+		private final boolean sorted;
+
+		Subtree(String[] allWords, int[] group, boolean sorted) {
+			this.allWords = allWords;
+			this.group = group;
+			this.sorted = sorted;
+		}
+
+		protected TrieNode compute() {
+			if (!sorted) {
+				return node(allWords, group, new int[group.length], 0, group.length, 0);
+			}
+
+			// keep the first of repeated words, then drop words that are prefixes of the
+			// next one, which are all the words that are prefixes of another
+			int n = 0;
+			for (int i=0; i < group.length; i++) {
+				if (n == 0 || !allWords[group[n-1]].equals(allWords[group[i]])) {
+					group[n++] = group[i];
+				}
+			}
+			int kept = 0;
+			for (int i=0; i < n; i++) {
+				if (i+1 == n || !allWords[group[i+1]].startsWith(allWords[group[i]])) {
+					group[kept++] = group[i];
+				}
+			}
+			return sortedNode(allWords, group, 0, kept, 0);
+		}
+	}
+
+	/**
+	 * Builds the node of the words order[lo..hi-1], in any order, whose substring starts at
+	 * position start. The words are put in order one level at a time, as in an MSD radix
+	 * sort: the substring ends at the first position where the words differ, and the words
+	 * are then split among the children by a counting sort on their character there. The
+	 * split is stable, so the first of repeated words keeps the smallest index.
+	 */
+	private static TrieNode node(String[] allWords, int[] order, int[] scratch, int lo, int hi, int start) {
+
+		String first = allWords[order[lo]];
+		while (true) {
+			int end = start+1;
+			boolean ended = false;
+			if (hi - lo > 1) {
+				for (; ; end++) {
+					boolean differs = false;
+					for (int w=lo; w < hi; w++) {
+						String word = allWords[order[w]];
+						if (word.length() == end) {
+							ended = true;
+							break;
+						}
+						differs |= word.charAt(end) != first.charAt(end);
+					}
+					if (ended || differs) {
+						break;
+					}
+				}
+			}
+			else {
+				end = first.length();
+			}
+
+			if (ended) {
+				// words that end here are repeats, or prefixes of the others; a leaf holds
+				// the first repeat, and prefixes are dropped
+				int kept = lo;
+				for (int w=lo; w < hi; w++) {
+					if (allWords[order[w]].length() != end) {
+						order[kept++] = order[w];
+					}
+				}
+				hi = kept == lo ? lo+1 : kept;
+				first = allWords[order[lo]];
+				continue;
+			}
+
+			if (end == first.length()) {
+				Indexes indexes = new Indexes(order[lo], (short)start, (short)(end-1));
+				return new TrieNode(indexes, null, null);
+			}
+
+			// counting sort on the character at end
+			char min = Character.MAX_VALUE, max = 0;
+			int wordIndex = order[lo];
+			for (int w=lo; w < hi; w++) {
+				char c = allWords[order[w]].charAt(end);
+				min = (char)Math.min(min, c);
+				max = (char)Math.max(max, c);
+				wordIndex = Math.min(wordIndex, order[w]);
+			}
+			int[] bucket = new int[max-min+2];
+			for (int w=lo; w < hi; w++) {
+				bucket[allWords[order[w]].charAt(end) - min + 1]++;
+			}
+			for (int i=1; i < bucket.length; i++) {
+				bucket[i] += bucket[i-1];
+			}
+			for (int w=lo; w < hi; w++) {
+				scratch[lo + bucket[allWords[order[w]].charAt(end) - min]++] = order[w];
+			}
+			System.arraycopy(scratch, lo, order, lo, hi-lo);
+
+			// bucket[i] is now where the words with character min+i end
+			TrieNode node = new TrieNode(new Indexes(wordIndex, (short)start, (short)(end-1)), null, null);
+			TrieNode prev = null;
+			for (int i=0, w=lo; i < bucket.length-1; i++) {
+				int next = lo + bucket[i];
+				if (next == w) {
+					continue;
+				}
+				TrieNode child = node(allWords, order, scratch, w, next, end);
+				if (prev == null) {
+					node.firstChild = child;
+				}
+				else {
+					prev.sibling = child;
+				}
+				prev = child;
+				w = next;
+			}
+			return node;
+		}
+	}
+
+	/**
+	 * Builds the node of the sorted words order[lo..hi-1], whose substring starts at
+	 * position start.
+	 */
+	private static TrieNode sortedNode(String[] allWords, int[] order, int lo, int hi, int start) {
+
+		String first = allWords[order[lo]];
+		if (hi - lo == 1) {
+			Indexes indexes = new Indexes(order[lo], (short)start, (short)(first.length()-1));
+			return new TrieNode(indexes, null, null);
+		}
+
+		// the words of a range share the prefix that its first and last words share
+		String last = allWords[order[hi-1]];
+		int end = start+1;
+		while (end < first.length() && end < last.length() && first.charAt(end) == last.charAt(end)) {
+			end++;
+		}
+
+		TrieNode node = new TrieNode(new Indexes(order[lo], (short)start, (short)(end-1)), null, null);
+		TrieNode prev = null;
+		for (int w=lo; w < hi; ) {
+			char c = allWords[order[w]].charAt(end);
+			int next = w+1;
+			while (next < hi && allWords[order[next]].charAt(end) == c) {
+				next++;
+			}
+			TrieNode child = sortedNode(allWords, order, w, next, end);
+			if (prev == null) {
+				node.firstChild = child;
+			}
+			else {
+				prev.sibling = child;
+			}
+			prev = child;
+			w = next;
+		}
+		return node;
+	}
+}
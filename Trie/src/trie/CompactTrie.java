@@ -0,0 +1,744 @@
+package trie;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * This class is an immutable compressed trie packed into flat arrays. It holds the same
+ * words as a trie built by Trie.buildTrie, and answers the same completion queries, but
+ * has no node objects: a node is an index into a few int arrays.
+ *
+ * Nodes are numbered in breadth-first order, so the children of a node are consecutive
+ * nodes, sorted by the first character of their substrings, and are found with a binary
+ * search instead of a walk along a sibling chain. The substring of every node is copied
+ * into one shared char array. The words below a node are a contiguous range of one int
+ * array of word indexes, so a completion list is read off in one piece, without visiting
+ * the nodes under the prefix.
+ *
+ * Each node takes four ints plus the characters of its substring, against a TrieNode with
+ * its Indexes, which take about 56 bytes in two objects.
+ *
+ * Words may have weights, such as frequencies. A weighted trie also keeps the largest
+ * weight below each node, and finds the K heaviest completions of a prefix best first:
+ * nodes and words wait in a priority queue ordered by that largest weight, so a node
+ * whose heaviest word cannot make the top K is never opened, and the work depends on K
+ * and the shape of the trie near the prefix, not on how many words match it.
+ *
+ * Fuzzy completion finds the words that start within a number of edits of a mistyped
+ * prefix. It walks the trie with one row of the edit distance table per character of the
+ * path, and leaves a subtree as soon as no cell of the row is within the bound.
+ *
+ */
+public class CompactTrie {
+
+	/**
+	 * "TRIE", at the start of a snapshot file
+	 */
+	static final int MAGIC = 0x54524945;
+
+	static final int VERSION = 1;
+
+	/**
+	 * Size of the header of a snapshot file, in bytes.
+	 */
+	static final int HEADER_SIZE = 7*4;
+
+	/**
+	 * Children of node i are nodes childStart[i] to childStart[i+1]-1.
+	 */
+	private final int[] childStart;
+
+	/**
+	 * Substring of node i is labels[labelStart[i]] to labels[labelStart[i+1]-1]. The root
+	 * has an empty substring.
+	 */
+	private final int[] labelStart;
+	private final char[] labels;
+
+	/**
+	 * Words below node i (including a word that ends at node i) are the word indexes
+	 * words[wordFrom[i]] to words[wordTo[i]-1], in sorted order of the words.
+	 */
+	private final int[] wordFrom, wordTo;
+	private final int[] words;
+
+	/**
+	 * Weight of the word at words[i] in weights[i], and largest weight of the words below
+	 * node i in maxWeight[i]; both null if the words have no weights.
+	 */
+	private final long[] weights, maxWeight;
+
+	/**
+	 * The arrays of this trie, as read by best.
+	 */
+	private final Nodes nodes = new Nodes() {
+		public int childStart(int node) {
+			return childStart[node];
+		}
+		public int wordFrom(int node) {
+			return wordFrom[node];
+		}
+		public int wordTo(int node) {
+			return wordTo[node];
+		}
+		public int word(int position) {
+			return words[position];
+		}
+		public long weight(int position) {
+			return weights[position];
+		}
+		public long maxWeight(int node) {
+			return maxWeight[node];
+		}
+	};
+
+	private CompactTrie(int[] childStart, int[] labelStart, char[] labels,
+			int[] wordFrom, int[] wordTo, int[] words, long[] weights, long[] maxWeight) {
+		this.childStart = childStart;
+		this.labelStart = labelStart;
+		this.labels = labels;
+		this.wordFrom = wordFrom;
+		this.wordTo = wordTo;
+		this.words = words;
+		this.weights = weights;
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Builds a compact trie of all the words in an array. A word that appears more than
+	 * once is kept at its first index.
+	 *
+	 * @param allWords Words to be stored (lowercase)
+	 * @return Compact trie with all the words
+	 */
+	public static CompactTrie build(String[] allWords) {
+		return build(allWords, (long[])null);
+	}
+
+	/**
+	 * Builds a compact trie of all the words in an array, with a weight for each word, for
+	 * topCompletions. A word that appears more than once is kept at its first index, with
+	 * the weight at that index.
+	 *
+	 * @param allWords Words to be stored (lowercase)
+	 * @param weights Weight of each word, such as its frequency, or null for no weights
+	 * @return Compact trie with all the words
+	 * @throws IllegalArgumentException If there is not one weight per word
+	 */
+	public static CompactTrie build(String[] allWords, long[] weights) {
+		int[] indexes = new int[allWords.length];
+		for (int i=0; i < indexes.length; i++) {
+			indexes[i] = i;
+		}
+		return build(allWords, indexes, weights);
+	}
+
+	/**
+	 * Builds a compact trie with the same words as a trie built by Trie.buildTrie, that is,
+	 * the words held by its leaf nodes. A compressed trie of a set of words is unique up to
+	 * the order of siblings, so the result has the same nodes as the given trie.
+	 *
+	 * @param root Root of trie
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @return Compact trie with the same words
+	 */
+	public static CompactTrie from(TrieNode root, String[] allWords) {
+		return from(root, allWords, null);
+	}
+
+	/**
+	 * Builds a compact trie with the same words as a trie built by Trie.buildTrie, with a
+	 * weight for each word, for topCompletions.
+	 *
+	 * @param root Root of trie
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param weights Weight of each word in allWords, or null for no weights
+	 * @return Compact trie with the same words
+	 * @throws IllegalArgumentException If there is not one weight per word
+	 */
+	public static CompactTrie from(TrieNode root, String[] allWords, long[] weights) {
+		ArrayList<Integer> leaves = new ArrayList<>();
+		collectLeaves(root == null ? null : root.firstChild, leaves);
+		int[] indexes = new int[leaves.size()];
+		for (int i=0; i < indexes.length; i++) {
+			indexes[i] = leaves.get(i);
+		}
+		return build(allWords, indexes, weights);
+	}
+
+	private static void collectLeaves(TrieNode ptr, ArrayList<Integer> leaves) {
+		for (; ptr != null; ptr=ptr.sibling) {
+			if (ptr.firstChild == null) {
+				leaves.add(ptr.substr.wordIndex);
+			}
+			else {
+				collectLeaves(ptr.firstChild, leaves);
+			}
+		}
+	}
+
+	/**
+	 * Builds a compact trie of some of the words in an array.
+	 */
+	private static CompactTrie build(final String[] allWords, int[] indexes, long[] allWeights) {
+
+		if (allWeights != null && allWeights.length != allWords.length) {
+			throw new IllegalArgumentException(allWeights.length + " weights for " + allWords.length + " words");
+		}
+
+		// sort the words, keeping the first index of each distinct word
+		Integer[] order = new Integer[indexes.length];
+		for (int i=0; i < order.length; i++) {
+			order[i] = indexes[i];
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int c = allWords[a].compareTo(allWords[b]);
+				return c != 0 ? c : Integer.compare(a, b);
+			}
+		});
+		int n = 0;
+		int[] words = new int[order.length];
+		for (int i=0; i < order.length; i++) {
+			if (n == 0 || !allWords[words[n-1]].equals(allWords[order[i]])) {
+				words[n++] = order[i];
+			}
+		}
+		words = Arrays.copyOf(words, n);
+
+		// a compressed trie of n words has at most 2n nodes; a node is the range of
+		// sorted words below it, and the position its substring starts at
+		int capacity = 2*n + 1;
+		int[] rangeFrom = new int[capacity], rangeTo = new int[capacity], depth = new int[capacity];
+		boolean[] endsWord = new boolean[capacity];
+		int[] childStart = new int[capacity+1], labelStart = new int[capacity+1];
+		StringBuilder labels = new StringBuilder();
+		rangeFrom[0] = 0;
+		rangeTo[0] = n;
+		int nodes = 1;
+
+		// breadth first: the children of a node are added to the queue together
+		for (int node=0; node < nodes; node++) {
+			int from = rangeFrom[node], to = rangeTo[node], start = depth[node];
+			// the words of a range share the prefix that its first and last words share
+			int end = start;
+			if (node > 0) {
+				String first = allWords[words[from]], last = allWords[words[to-1]];
+				while (end < first.length() && end < last.length() && first.charAt(end) == last.charAt(end)) {
+					end++;
+				}
+			}
+			labelStart[node] = labels.length();
+			if (end > start) {
+				labels.append(allWords[words[from]], start, end);
+			}
+			childStart[node] = nodes;
+
+			// a word that ends here sorts first; the rest are grouped by their next character
+			int w = from;
+			if (w < to && allWords[words[w]].length() == end) {
+				endsWord[node] = true;
+				w++;
+			}
+			while (w < to) {
+				char c = allWords[words[w]].charAt(end);
+				int next = w+1;
+				while (next < to && allWords[words[next]].charAt(end) == c) {
+					next++;
+				}
+				rangeFrom[nodes] = w;
+				rangeTo[nodes] = next;
+				depth[nodes] = end;
+				nodes++;
+				w = next;
+			}
+		}
+		childStart[nodes] = nodes;
+		labelStart[nodes] = labels.length();
+
+		char[] labelChars = new char[labels.length()];
+		labels.getChars(0, labelChars.length, labelChars, 0);
+
+		// children come after their parent, so going backwards finds each subtree's
+		// largest weight from those of its children
+		long[] weights = null, maxWeight = null;
+		if (allWeights != null) {
+			weights = new long[n];
+			for (int i=0; i < n; i++) {
+				weights[i] = allWeights[words[i]];
+			}
+			maxWeight = new long[nodes];
+			for (int node=nodes-1; node >= 0; node--) {
+				long max = endsWord[node] ? weights[rangeFrom[node]] : Long.MIN_VALUE;
+				for (int c=childStart[node]; c < childStart[node+1]; c++) {
+					max = Math.max(max, maxWeight[c]);
+				}
+				maxWeight[node] = max;
+			}
+		}
+
+		return new CompactTrie(Arrays.copyOf(childStart, nodes+1), Arrays.copyOf(labelStart, nodes+1),
+				labelChars, Arrays.copyOf(rangeFrom, nodes), Arrays.copyOf(rangeTo, nodes), words,
+				weights, maxWeight);
+	}
+
+	/**
+	 * Returns the number of distinct words in this trie.
+	 *
+	 * @return Number of words
+	 */
+	public int size() {
+		return words.length;
+	}
+
+	/**
+	 * Returns the number of nodes in this trie, including the root.
+	 *
+	 * @return Number of nodes
+	 */
+	public int nodeCount() {
+		return wordFrom.length;
+	}
+
+	/**
+	 * Returns the child of a node whose substring starts with a character, or -1 if there
+	 * is none.
+	 */
+	private int child(int node, char c) {
+		int lo = childStart[node], hi = childStart[node+1]-1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char first = labels[labelStart[mid]];
+			if (first < c) {
+				lo = mid+1;
+			}
+			else if (first > c) {
+				hi = mid-1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the node below which all words start with a prefix, or -1 if no word does.
+	 */
+	private int find(String prefix) {
+		int node = 0, pos = 0;
+		while (true) {
+			for (int i=labelStart[node]; i < labelStart[node+1]; i++) {
+				if (pos == prefix.length()) {
+					return node;
+				}
+				if (labels[i] != prefix.charAt(pos++)) {
+					return -1;
+				}
+			}
+			if (pos == prefix.length()) {
+				return node;
+			}
+			node = child(node, prefix.charAt(pos));
+			if (node == -1) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Given a prefix, returns the indexes of all the words in this trie that start with it.
+	 * This is the completion list of Trie.completionList, as word indexes instead of leaf
+	 * nodes.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return Indexes of the words that start with the prefix, in sorted order of the words,
+	 *         or null if there is no such word
+	 */
+	public int[] completionList(String prefix) {
+		int node = find(prefix);
+		if (node == -1 || wordFrom[node] == wordTo[node]) {
+			return null;
+		}
+		return Arrays.copyOfRange(words, wordFrom[node], wordTo[node]);
+	}
+
+	/**
+	 * Given a prefix, returns the indexes of the K heaviest words in this trie that start
+	 * with it. Words of equal weight come in sorted order, so if the trie has no weights,
+	 * these are the first K completions in sorted order.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param k Maximum number of words
+	 * @return Indexes of up to k words that start with the prefix, in descending order of
+	 *         weight, or null if there is no such word
+	 */
+	public int[] topCompletions(String prefix, int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+		int node = find(prefix);
+		if (node == -1 || wordFrom[node] == wordTo[node]) {
+			return null;
+		}
+		if (maxWeight == null) {
+			return Arrays.copyOfRange(words, wordFrom[node], Math.min(wordTo[node], wordFrom[node] + k));
+		}
+
+		int[] top = new int[Math.min(k, wordTo[node] - wordFrom[node])];
+		Frontier frontier = new Frontier();
+		frontier.push(maxWeight[node], wordFrom[node], node);
+		best(nodes, frontier, top);
+		return top;
+	}
+
+	/**
+	 * Read access to the arrays of a trie, in memory or in a snapshot file, so that best
+	 * can search the tries of this class and of MappedTrie alike.
+	 */
+	interface Nodes {
+		int childStart(int node);
+		int wordFrom(int node);
+		int wordTo(int node);
+		int word(int position);
+		long weight(int position);
+		long maxWeight(int node);
+	}
+
+	/**
+	 * Fills an array with the heaviest words below the nodes in a frontier, best first.
+	 *
+	 * @param nodes Arrays of the trie
+	 * @param frontier Nodes to start from
+	 * @param top Filled with the indexes of the words
+	 */
+	static void best(Nodes nodes, Frontier frontier, int[] top) {
+		int n = 0;
+		while (n < top.length) {
+			int entry = frontier.pop();
+			if (entry < 0) {
+				// a word: nothing left in the queue can be heavier
+				top[n++] = nodes.word(~entry);
+				continue;
+			}
+			// a word that ends at the node is the first of its words, before its children's
+			int firstChild = nodes.childStart(entry), lastChild = nodes.childStart(entry+1);
+			int from = nodes.wordFrom(entry);
+			if (from < (firstChild < lastChild ? nodes.wordFrom(firstChild) : nodes.wordTo(entry))) {
+				frontier.push(nodes.weight(from), from, ~from);
+			}
+			for (int c=firstChild; c < lastChild; c++) {
+				frontier.push(nodes.maxWeight(c), nodes.wordFrom(c), c);
+			}
+		}
+	}
+
+	/**
+	 * A priority queue of nodes and words for topCompletions here and in MappedTrie, kept as
+	 * a binary heap in parallel arrays. An entry is a node, or the complement of a position
+	 * in words; it comes out heaviest first, then lowest position first, then nodes before
+	 * words. A node weighs as much as its heaviest word and its position is that of its
+	 * first word, so it comes out before any of its words.
+	 */
+	static class Frontier {
+
+		private long[] weight = new long[16];
+		private int[] position = new int[16], entry = new int[16];
+		private int size;
+
+		private boolean before(int i, int j) {
+			if (weight[i] != weight[j]) {
+				return weight[i] > weight[j];
+			}
+			if (position[i] != position[j]) {
+				return position[i] < position[j];
+			}
+			return entry[i] > entry[j];
+		}
+
+		private void swap(int i, int j) {
+			long w = weight[i]; weight[i] = weight[j]; weight[j] = w;
+			int p = position[i]; position[i] = position[j]; position[j] = p;
+			int e = entry[i]; entry[i] = entry[j]; entry[j] = e;
+		}
+
+		void push(long w, int p, int e) {
+			if (size == weight.length) {
+				weight = Arrays.copyOf(weight, 2*size);
+				position = Arrays.copyOf(position, 2*size);
+				entry = Arrays.copyOf(entry, 2*size);
+			}
+			weight[size] = w;
+			position[size] = p;
+			entry[size] = e;
+			for (int i=size++; i > 0 && before(i, (i-1)/2); i=(i-1)/2) {
+				swap(i, (i-1)/2);
+			}
+		}
+
+		int pop() {
+			int top = entry[0];
+			swap(0, --size);
+			for (int i=0; 2*i+1 < size; ) {
+				int c = 2*i+1;
+				if (c+1 < size && before(c+1, c)) {
+					c++;
+				}
+				if (!before(c, i)) {
+					break;
+				}
+				swap(i, c);
+				i = c;
+			}
+			return top;
+		}
+	}
+
+	/**
+	 * Given a prefix that may be mistyped, returns the indexes of all the words in this trie
+	 * that start with something within a number of edits of it, an edit being the insertion,
+	 * deletion or replacement of one character. With no edits, this is completionList.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param maxEdits Largest number of edits between the prefix and the start of a word
+	 * @return Indexes of the words that match, in sorted order of the words, or null if
+	 *         there is no such word
+	 */
+	public int[] fuzzyCompletionList(String prefix, int maxEdits) {
+		Fuzzy fuzzy = fuzzy(prefix, maxEdits);
+		int count = 0;
+		for (int i=0; i < fuzzy.count; i++) {
+			count += wordTo[fuzzy.nodes[i]] - wordFrom[fuzzy.nodes[i]];
+		}
+		if (count == 0) {
+			return null;
+		}
+		int[] indexes = new int[count];
+		count = 0;
+		for (int i=0; i < fuzzy.count; i++) {
+			int node = fuzzy.nodes[i];
+			System.arraycopy(words, wordFrom[node], indexes, count, wordTo[node] - wordFrom[node]);
+			count += wordTo[node] - wordFrom[node];
+		}
+		return indexes;
+	}
+
+	/**
+	 * Given a prefix that may be mistyped, returns the indexes of the K heaviest words in
+	 * this trie that start with something within a number of edits of it, as
+	 * fuzzyCompletionList would find them. Words of equal weight come in sorted order.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param maxEdits Largest number of edits between the prefix and the start of a word
+	 * @param k Maximum number of words
+	 * @return Indexes of up to k words that match, in descending order of weight, or null
+	 *         if there is no such word
+	 */
+	public int[] fuzzyTopCompletions(String prefix, int maxEdits, int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+		Fuzzy fuzzy = fuzzy(prefix, maxEdits);
+		int count = 0;
+		for (int i=0; i < fuzzy.count && count < k; i++) {
+			count += wordTo[fuzzy.nodes[i]] - wordFrom[fuzzy.nodes[i]];
+		}
+		if (count == 0) {
+			return null;
+		}
+		int[] top = new int[Math.min(k, count)];
+		if (maxWeight == null) {
+			// the matched subtrees are in sorted order
+			int n = 0;
+			for (int i=0; n < top.length; i++) {
+				int node = fuzzy.nodes[i];
+				for (int w=wordFrom[node]; w < wordTo[node] && n < top.length; w++) {
+					top[n++] = words[w];
+				}
+			}
+			return top;
+		}
+		Frontier frontier = new Frontier();
+		for (int i=0; i < fuzzy.count; i++) {
+			int node = fuzzy.nodes[i];
+			frontier.push(maxWeight[node], wordFrom[node], node);
+		}
+		best(nodes, frontier, top);
+		return top;
+	}
+
+	/**
+	 * Finds the subtrees whose words all start within maxEdits edits of a prefix.
+	 */
+	private Fuzzy fuzzy(String prefix, int maxEdits) {
+		if (maxEdits < 0) {
+			throw new IllegalArgumentException("maxEdits must not be negative: " + maxEdits);
+		}
+		Fuzzy fuzzy = new Fuzzy(prefix, maxEdits);
+		int[] first = fuzzy.row(0);
+		for (int j=0; j <= prefix.length(); j++) {
+			first[j] = j;
+		}
+		if (prefix.length() <= maxEdits) {
+			// deleting the whole prefix is within the bound: every word completes it
+			fuzzy.add(0);
+		}
+		else {
+			fuzzyVisit(fuzzy, 0, 0);
+		}
+		return fuzzy;
+	}
+
+	/**
+	 * State of a fuzzy completion: rows[d][j] is the edit distance between the first j
+	 * characters of the prefix and the first d characters of the path to the current node,
+	 * and nodes holds the subtrees found so far, in sorted order.
+	 */
+	private static class Fuzzy {
+
+		final String prefix;
+		final int maxEdits;
+		int[][] rows = new int[16][];
+		int[] nodes = new int[16];
+		int count;
+
+		Fuzzy(String prefix, int maxEdits) {
+			this.prefix = prefix;
+			this.maxEdits = maxEdits;
+		}
+
+		int[] row(int depth) {
+			if (depth == rows.length) {
+				rows = Arrays.copyOf(rows, 2*depth);
+			}
+			if (rows[depth] == null) {
+				rows[depth] = new int[prefix.length()+1];
+			}
+			return rows[depth];
+		}
+
+		void add(int node) {
+			if (count == nodes.length) {
+				nodes = Arrays.copyOf(nodes, 2*count);
+			}
+			nodes[count++] = node;
+		}
+	}
+
+	/**
+	 * Extends the rows of a fuzzy completion along the substring of a node, whose path
+	 * before it has depth characters, and then along its children.
+	 */
+	private void fuzzyVisit(Fuzzy fuzzy, int node, int depth) {
+		String prefix = fuzzy.prefix;
+		int m = prefix.length();
+		for (int i=labelStart[node]; i < labelStart[node+1]; i++) {
+			char c = labels[i];
+			int[] prev = fuzzy.rows[depth], next = fuzzy.row(depth+1);
+			next[0] = prev[0] + 1;
+			int min = next[0];
+			for (int j=1; j <= m; j++) {
+				int cost = prev[j-1] + (prefix.charAt(j-1) == c ? 0 : 1);
+				next[j] = Math.min(cost, Math.min(prev[j], next[j-1]) + 1);
+				min = Math.min(min, next[j]);
+			}
+			depth++;
+			if (next[m] <= fuzzy.maxEdits) {
+				// the whole prefix is matched: every word below completes it
+				fuzzy.add(node);
+				return;
+			}
+			if (min > fuzzy.maxEdits) {
+				// no longer path can come back within the bound
+				return;
+			}
+		}
+		for (int c=childStart[node]; c < childStart[node+1]; c++) {
+			fuzzyVisit(fuzzy, c, depth);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of this trie and of its words to a file, which MappedTrie can open
+	 * and search without building anything in memory.
+	 *
+	 * The file is laid out as follows (all numbers are big-endian):
+	 *
+	 * header: magic (int), version (int), number of nodes (int), number of characters of
+	 *         substrings (int), number of words in the trie (int), number of words in the
+	 *         array of words (int), 1 if the words have weights or else 0 (int)
+	 * nodes:  childStart (nodes + 1 ints), labelStart (nodes + 1 ints), wordFrom (nodes ints),
+	 *         wordTo (nodes ints), words (trie words ints), and if there are weights,
+	 *         weights (trie words longs) and maxWeight (nodes longs), as in this class
+	 * labels: the characters of the substrings (chars)
+	 * words:  offsets of each word of the array of words into the characters that follow
+	 *         (words + 1 ints), then the characters of all the words (chars)
+	 *
+	 * @param snapshotFile Name of the file to be written
+	 * @param allWords Array of words this trie was built from
+	 * @throws IOException If the file cannot be written
+	 * @throws IllegalArgumentException If this trie has a word index beyond the array
+	 */
+	public void save(String snapshotFile, String[] allWords)
+	throws IOException {
+		for (int w : words) {
+			if (w >= allWords.length) {
+				throw new IllegalArgumentException("Word index " + w + " not in " + allWords.length + " words");
+			}
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nodeCount());
+			out.writeInt(labels.length);
+			out.writeInt(words.length);
+			out.writeInt(allWords.length);
+			out.writeInt(weights == null ? 0 : 1);
+			for (int[] ints : new int[][] { childStart, labelStart, wordFrom, wordTo, words }) {
+				for (int i : ints) {
+					out.writeInt(i);
+				}
+			}
+			if (weights != null) {
+				for (long w : weights) {
+					out.writeLong(w);
+				}
+				for (long w : maxWeight) {
+					out.writeLong(w);
+				}
+			}
+			for (char c : labels) {
+				out.writeChar(c);
+			}
+			int offset = 0;
+			for (String word : allWords) {
+				out.writeInt(offset);
+				offset += word.length();
+			}
+			out.writeInt(offset);
+			for (String word : allWords) {
+				out.writeChars(word);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the number of words in this trie that start with a prefix.
+	 *
+	 * @param prefix Prefix
+	 * @return Number of words that start with the prefix
+	 */
+	public int countCompletions(String prefix) {
+		int node = find(prefix);
+		return node == -1 ? 0 : wordTo[node] - wordFrom[node];
+	}
+}
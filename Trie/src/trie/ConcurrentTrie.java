@@ -0,0 +1,269 @@
+package trie;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * This class implements a compressed trie that any number of threads can add words to
+ * while others complete prefixes, without locks.
+ *
+ * A node holds a substring of a word, as a word and two indexes in the manner of Indexes,
+ * and a branch: the array of its children, sorted by first character, and the word that
+ * ends at the node, if any. Nodes and children arrays are never changed once published.
+ * An insert builds a new children array, with the new child added or with a child split
+ * in two, and installs it with a compare-and-set on the branch; if another insert changed
+ * the branch first, it retries from that branch. When a child is split, the lower half
+ * shares the child's branch object, so words that other threads add below the child at
+ * the same time are not lost.
+ *
+ * Lookups and completions only read: they never wait, never retry, and see every insert
+ * that finished before they started. Words inserted while a completion runs may or may
+ * not be part of it.
+ *
+ */
+public class ConcurrentTrie {
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	/**
+	 * Children and word of a node, the part of a node that inserts change.
+	 */
+	private static class Branch {
+
+		static final AtomicReferenceFieldUpdater<Branch,Node[]> CHILDREN =
+				AtomicReferenceFieldUpdater.newUpdater(Branch.class, Node[].class, "children");
+		static final AtomicReferenceFieldUpdater<Branch,String> WORD =
+				AtomicReferenceFieldUpdater.newUpdater(Branch.class, String.class, "word");
+
+		/**
+		 * Children, sorted by first character; the array is replaced, never changed
+		 */
+		volatile Node[] children;
+
+		/**
+		 * Word that ends at this node, or null
+		 */
+		volatile String word;
+
+		Branch(Node[] children, String word) {
+			this.children = children;
+			this.word = word;
+		}
+	}
+
+	/**
+	 * A node: the substring word[startIndex..endIndex-1], and its branch.
+	 */
+	private static class Node {
+
+		final String word;
+		final int startIndex, endIndex;
+		final Branch branch;
+
+		Node(String word, int startIndex, int endIndex, Branch branch) {
+			this.word = word;
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+			this.branch = branch;
+		}
+
+		char first() {
+			return word.charAt(startIndex);
+		}
+	}
+
+	private static final AtomicIntegerFieldUpdater<ConcurrentTrie> SIZE =
+			AtomicIntegerFieldUpdater.newUpdater(ConcurrentTrie.class, "size");
+
+	private final Branch root = new Branch(NO_CHILDREN, null);
+	private volatile int size;
+
+	/**
+	 * Returns the position of the child whose substring starts with a character, or
+	 * -(insertion point)-1 if there is none, as in Arrays.binarySearch.
+	 */
+	private static int find(Node[] children, char c) {
+		int lo = 0, hi = children.length-1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char f = children[mid].first();
+			if (f < c) {
+				lo = mid+1;
+			}
+			else if (f > c) {
+				hi = mid-1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(lo+1);
+	}
+
+	/**
+	 * Returns a copy of an array with a node inserted at a position.
+	 */
+	private static Node[] inserted(Node[] children, int pos, Node node) {
+		Node[] copy = new Node[children.length+1];
+		System.arraycopy(children, 0, copy, 0, pos);
+		copy[pos] = node;
+		System.arraycopy(children, pos, copy, pos+1, children.length-pos);
+		return copy;
+	}
+
+	/**
+	 * Adds a word to this trie. A word may be a prefix of another.
+	 *
+	 * @param word Word to be added (lowercase)
+	 * @return True if the word was added, false if it was already in this trie
+	 */
+	public boolean insert(String word) {
+
+		Branch branch = root;
+		int pos = 0;
+
+		while (true) {
+
+			if (pos == word.length()) {
+				if (Branch.WORD.compareAndSet(branch, null, word)) {
+					SIZE.incrementAndGet(this);
+					return true;
+				}
+				return false;
+			}
+
+			Node[] children = branch.children;
+			int i = find(children, word.charAt(pos));
+			if (i < 0) {
+				Node leaf = new Node(word, pos, word.length(), new Branch(NO_CHILDREN, word));
+				if (Branch.CHILDREN.compareAndSet(branch, children, inserted(children, -i-1, leaf))) {
+					SIZE.incrementAndGet(this);
+					return true;
+				}
+				// another insert changed this branch: look again
+				continue;
+			}
+
+			Node child = children[i];
+			int match = 1;
+			while (child.startIndex+match < child.endIndex && pos+match < word.length()
+					&& child.word.charAt(child.startIndex+match) == word.charAt(pos+match)) {
+				match++;
+			}
+
+			if (child.startIndex+match == child.endIndex) {
+				branch = child.branch;
+				pos += match;
+				continue;
+			}
+
+			// split the child: the upper half gets a new branch, the lower half keeps the child's
+			Node lower = new Node(child.word, child.startIndex+match, child.endIndex, child.branch);
+			Branch split;
+			if (pos+match == word.length()) {
+				split = new Branch(new Node[] { lower }, word);
+			}
+			else {
+				Node leaf = new Node(word, pos+match, word.length(), new Branch(NO_CHILDREN, word));
+				split = new Branch(leaf.first() < lower.first() ? new Node[] { leaf, lower } : new Node[] { lower, leaf }, null);
+			}
+			Node[] replaced = children.clone();
+			replaced[i] = new Node(child.word, child.startIndex, child.startIndex+match, split);
+			if (Branch.CHILDREN.compareAndSet(branch, children, replaced)) {
+				SIZE.incrementAndGet(this);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the branch below which all words start with a prefix, or null if no word can.
+	 */
+	private Branch find(String prefix) {
+		Branch branch = root;
+		int pos = 0;
+		while (pos < prefix.length()) {
+			Node[] children = branch.children;
+			int i = find(children, prefix.charAt(pos));
+			if (i < 0) {
+				return null;
+			}
+			Node child = children[i];
+			for (int c=child.startIndex; c < child.endIndex && pos < prefix.length(); c++, pos++) {
+				if (child.word.charAt(c) != prefix.charAt(pos)) {
+					return null;
+				}
+			}
+			branch = child.branch;
+		}
+		return branch;
+	}
+
+	/**
+	 * Tells whether a word is in this trie.
+	 *
+	 * @param word Word
+	 * @return True if the word was added to this trie
+	 */
+	public boolean contains(String word) {
+		Branch branch = find(word);
+		if (branch == null) {
+			return false;
+		}
+		// the prefix may end inside a node's substring, whose branch holds a longer word
+		String w = branch.word;
+		return w != null && w.length() == word.length();
+	}
+
+	/**
+	 * Returns the number of words in this trie.
+	 *
+	 * @return Number of words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the words in this trie that start with a prefix.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return Words that start with the prefix, in sorted order, or null if there is no such word
+	 */
+	public ArrayList<String> completionList(String prefix) {
+		ArrayList<String> completeWords = new ArrayList<>();
+		if (completionList(prefix, completeWords) > 0) {
+			return completeWords;
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the words in this trie that start with a prefix to a sink, in sorted order.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param sink Collection to which the words are added
+	 * @return Number of words added to the sink
+	 */
+	public int completionList(String prefix, Collection<? super String> sink) {
+		Branch branch = find(prefix);
+		return branch == null ? 0 : collect(branch, sink);
+	}
+
+	private static int collect(Branch branch, Collection<? super String> sink) {
+		int count = 0;
+		String word = branch.word;
+		if (word != null) {
+			sink.add(word);
+			count++;
+		}
+		for (Node child : branch.children) {
+			count += collect(child.branch, sink);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,120 @@
+package trie;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of a ConcurrentTrie with 1, 2, 4, ... threads, up to the number
+ * of available processors. Every thread mixes completions of prefixes of the words in a
+ * words file with inserts of new words, which extend those words with random letters.
+ *
+ * Usage: java trie.ConcurrentTrieBenchmark wordsFile [secondsPerRun] [insertPercent]
+ *
+ */
+public class ConcurrentTrieBenchmark {
+
+	public static void main(String[] args)
+	throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: java trie.ConcurrentTrieBenchmark wordsFile [secondsPerRun] [insertPercent]");
+			return;
+		}
+		long millis = 1000L * (args.length > 1 ? Integer.parseInt(args[1]) : 3);
+		int insertPercent = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		// words appear one per line in input file
+		// first line has number of words
+		Scanner sc = new Scanner(new File(args[0]));
+		int numWords = Integer.parseInt(sc.nextLine());
+		String[] allWords = new String[numWords];
+		for (int i=0; i < allWords.length; i++) {
+			allWords[i] = sc.nextLine().trim().toLowerCase();
+		}
+		sc.close();
+		if (allWords.length == 0) {
+			System.err.println("Nothing to complete: the words file is empty");
+			return;
+		}
+
+		System.out.println("threads\tops/s\t\tinserts\twords");
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads=1; ; threads *= 2) {
+			threads = Math.min(threads, cores);
+			ConcurrentTrie trie = new ConcurrentTrie();
+			for (String word : allWords) {
+				trie.insert(word);
+			}
+			run(trie, allWords, threads, insertPercent, millis);
+			if (threads == cores) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Runs the threads for the given time, and prints the throughput.
+	 */
+	private static void run(final ConcurrentTrie trie, final String[] allWords, int threads,
+			final int insertPercent, long millis)
+	throws InterruptedException {
+		final AtomicBoolean stop = new AtomicBoolean();
+		final LongAdder operations = new LongAdder();
+		final LongAdder inserts = new LongAdder();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		Thread[] workers = new Thread[threads];
+		for (int t=0; t < threads; t++) {
+			final long seed = t;
+			workers[t] = new Thread() {
+				public void run() {
+					Random random = new Random(seed);
+					ArrayList<String> sink = new ArrayList<>();
+					long n = 0, added = 0;
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while (!stop.get()) {
+						String word = allWords[random.nextInt(allWords.length)];
+						if (random.nextInt(100) < insertPercent) {
+							StringBuilder sb = new StringBuilder(word);
+							for (int i=random.nextInt(4); i >= 0; i--) {
+								sb.append((char)('a' + random.nextInt(26)));
+							}
+							trie.insert(sb.toString());
+							added++;
+						}
+						else {
+							// prefixes of two letters or more, so completions stay small
+							sink.clear();
+							trie.completionList(word.substring(0, Math.min(word.length(), 2 + random.nextInt(3))), sink);
+						}
+						n++;
+					}
+					operations.add(n);
+					inserts.add(added);
+				}
+			};
+		}
+
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep(millis);
+		stop.set(true);
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - begin;
+		System.out.printf("%d\t%.0f\t\t%d\t%d%n", threads, operations.sum() * 1e9 / elapsed, inserts.sum(), trie.size());
+	}
+}
@@ -0,0 +1,266 @@
+package trie;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class searches a snapshot written by CompactTrie.save directly through a memory
+ * mapping of the file. Opening a snapshot only maps it and reads its header: no node is
+ * built and no word is read until a query needs it, so a process starts at once, and
+ * processes that open the same snapshot share its pages in the page cache.
+ *
+ * Queries give the same results as those of the CompactTrie that was saved.
+ *
+ * Snapshot files are limited to 2GB, the size of a single mapping.
+ *
+ */
+public class MappedTrie {
+
+	private final MappedByteBuffer buf;
+	private final int nodeCount, wordCount, allWordsCount;
+	private final boolean weighted;
+	private final int childStartOffset, labelStartOffset, wordFromOffset, wordToOffset, wordsOffset;
+	private final int weightsOffset, maxWeightOffset, labelsOffset, wordStartOffset, wordCharsOffset;
+
+	/**
+	 * Opens a snapshot file.
+	 *
+	 * @param snapshotFile Name of the snapshot file
+	 * @throws IOException If the file cannot be read, or is not a snapshot file
+	 */
+	public MappedTrie(String snapshotFile)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot file larger than 2GB: " + snapshotFile);
+			}
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			raf.close();
+		}
+		if (buf.capacity() < CompactTrie.HEADER_SIZE || buf.getInt(0) != CompactTrie.MAGIC) {
+			throw new IOException("Not a trie snapshot file: " + snapshotFile);
+		}
+		if (buf.getInt(4) != CompactTrie.VERSION) {
+			throw new IOException("Unsupported trie snapshot version " + buf.getInt(4) + ": " + snapshotFile);
+		}
+		nodeCount = buf.getInt(8);
+		int labelCount = buf.getInt(12);
+		wordCount = buf.getInt(16);
+		allWordsCount = buf.getInt(20);
+		weighted = buf.getInt(24) != 0;
+
+		childStartOffset = CompactTrie.HEADER_SIZE;
+		labelStartOffset = childStartOffset + 4*(nodeCount+1);
+		wordFromOffset = labelStartOffset + 4*(nodeCount+1);
+		wordToOffset = wordFromOffset + 4*nodeCount;
+		wordsOffset = wordToOffset + 4*nodeCount;
+		weightsOffset = wordsOffset + 4*wordCount;
+		maxWeightOffset = weightsOffset + (weighted ? 8*wordCount : 0);
+		labelsOffset = maxWeightOffset + (weighted ? 8*nodeCount : 0);
+		wordStartOffset = labelsOffset + 2*labelCount;
+		wordCharsOffset = wordStartOffset + 4*(allWordsCount+1);
+		if (wordCharsOffset > buf.capacity()
+				|| wordCharsOffset + 2L*buf.getInt(wordStartOffset + 4*allWordsCount) != buf.capacity()) {
+			throw new IOException("Truncated trie snapshot file: " + snapshotFile);
+		}
+	}
+
+	/**
+	 * The arrays of the snapshot, as read by CompactTrie.best.
+	 */
+	private final CompactTrie.Nodes nodes = new CompactTrie.Nodes() {
+		public int childStart(int node) {
+			return MappedTrie.this.childStart(node);
+		}
+		public int wordFrom(int node) {
+			return MappedTrie.this.wordFrom(node);
+		}
+		public int wordTo(int node) {
+			return MappedTrie.this.wordTo(node);
+		}
+		public int word(int position) {
+			return words(position);
+		}
+		public long weight(int position) {
+			return buf.getLong(weightsOffset + 8*position);
+		}
+		public long maxWeight(int node) {
+			return buf.getLong(maxWeightOffset + 8*node);
+		}
+	};
+
+	private int childStart(int node) {
+		return buf.getInt(childStartOffset + 4*node);
+	}
+
+	private int labelStart(int node) {
+		return buf.getInt(labelStartOffset + 4*node);
+	}
+
+	private char label(int i) {
+		return buf.getChar(labelsOffset + 2*i);
+	}
+
+	private int wordFrom(int node) {
+		return buf.getInt(wordFromOffset + 4*node);
+	}
+
+	private int wordTo(int node) {
+		return buf.getInt(wordToOffset + 4*node);
+	}
+
+	private int words(int i) {
+		return buf.getInt(wordsOffset + 4*i);
+	}
+
+	/**
+	 * Returns the number of distinct words in the trie.
+	 *
+	 * @return Number of words
+	 */
+	public int size() {
+		return wordCount;
+	}
+
+	/**
+	 * Returns the number of nodes in the trie, including the root.
+	 *
+	 * @return Number of nodes
+	 */
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Returns a word of the array of words the trie was built from.
+	 *
+	 * @param index Index of the word in the array
+	 * @return Word
+	 */
+	public String word(int index) {
+		if (index < 0 || index >= allWordsCount) {
+			throw new IndexOutOfBoundsException("Word index " + index + " not in " + allWordsCount + " words");
+		}
+		int from = buf.getInt(wordStartOffset + 4*index);
+		int to = buf.getInt(wordStartOffset + 4*(index+1));
+		char[] chars = new char[to-from];
+		for (int i=0; i < chars.length; i++) {
+			chars[i] = buf.getChar(wordCharsOffset + 2*(from+i));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the child of a node whose substring starts with a character, or -1 if there
+	 * is none.
+	 */
+	private int child(int node, char c) {
+		int lo = childStart(node), hi = childStart(node+1)-1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char first = label(labelStart(mid));
+			if (first < c) {
+				lo = mid+1;
+			}
+			else if (first > c) {
+				hi = mid-1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the node below which all words start with a prefix, or -1 if no word does.
+	 */
+	private int find(String prefix) {
+		int node = 0, pos = 0;
+		while (true) {
+			for (int i=labelStart(node), end=labelStart(node+1); i < end; i++) {
+				if (pos == prefix.length()) {
+					return node;
+				}
+				if (label(i) != prefix.charAt(pos++)) {
+					return -1;
+				}
+			}
+			if (pos == prefix.length()) {
+				return node;
+			}
+			node = child(node, prefix.charAt(pos));
+			if (node == -1) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Given a prefix, returns the indexes of all the words in the trie that start with it.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return Indexes of the words that start with the prefix, in sorted order of the words,
+	 *         or null if there is no such word
+	 */
+	public int[] completionList(String prefix) {
+		int node = find(prefix);
+		if (node == -1 || wordFrom(node) == wordTo(node)) {
+			return null;
+		}
+		int from = wordFrom(node);
+		int[] indexes = new int[wordTo(node) - from];
+		for (int i=0; i < indexes.length; i++) {
+			indexes[i] = words(from+i);
+		}
+		return indexes;
+	}
+
+	/**
+	 * Given a prefix, returns the indexes of the K heaviest words in the trie that start
+	 * with it, as CompactTrie.topCompletions does.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param k Maximum number of words
+	 * @return Indexes of up to k words that start with the prefix, in descending order of
+	 *         weight, or null if there is no such word
+	 */
+	public int[] topCompletions(String prefix, int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+		int node = find(prefix);
+		if (node == -1 || wordFrom(node) == wordTo(node)) {
+			return null;
+		}
+		int[] top = new int[Math.min(k, wordTo(node) - wordFrom(node))];
+		if (!weighted) {
+			for (int i=0; i < top.length; i++) {
+				top[i] = words(wordFrom(node)+i);
+			}
+			return top;
+		}
+
+		CompactTrie.Frontier frontier = new CompactTrie.Frontier();
+		frontier.push(nodes.maxWeight(node), wordFrom(node), node);
+		CompactTrie.best(nodes, frontier, top);
+		return top;
+	}
+
+	/**
+	 * Returns the number of words in the trie that start with a prefix.
+	 *
+	 * @param prefix Prefix
+	 * @return Number of words that start with the prefix
+	 */
+	public int countCompletions(String prefix) {
+		int node = find(prefix);
+		return node == -1 ? 0 : wordTo(node) - wordFrom(node);
+	}
+}
@@ -0,0 +1,98 @@
+package trie;
+
+/**
+ * This class encapsulates a node of a SortedTrie, with fields for the following:
+ * - an Indexes instance, pointing to the substring that is held at that node
+ * - the first character of that substring
+ * - the children of the node, in an array sorted by their first characters
+ * 
+ * A leaf node has no children array.
+ *
+ */
+public class SortedTrieNode {
+
+	/**
+	 * Substring held at this node (could be a single character)
+	 */
+	Indexes substr;
+
+	/**
+	 * First character of the substring, which orders this node among its siblings
+	 */
+	char first;
+
+	/**
+	 * Children of this node in children[0] to children[childCount-1], sorted by first
+	 * character, or null for a leaf
+	 */
+	SortedTrieNode[] children;
+
+	/**
+	 * Number of children of this node
+	 */
+	int childCount;
+
+	/**
+	 * Initializes this trie node with a substring and no children
+	 * 
+	 * @param substr Substring held at this node
+	 * @param first First character of the substring
+	 */
+	public SortedTrieNode(Indexes substr, char first) {
+		this.substr = substr;
+		this.first = first;
+	}
+
+	/**
+	 * Returns the position of the child whose substring starts with a character, or
+	 * -(insertion point)-1 if there is none, as in Arrays.binarySearch.
+	 * 
+	 * @param c First character of the child
+	 * @return Position of the child
+	 */
+	int find(char c) {
+		int lo = 0, hi = childCount-1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char f = children[mid].first;
+			if (f < c) {
+				lo = mid+1;
+			}
+			else if (f > c) {
+				hi = mid-1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(lo+1);
+	}
+
+	/**
+	 * Inserts a child at a position, keeping the children sorted.
+	 * 
+	 * @param pos Position, as returned by find for the first character of the child
+	 * @param child Child to be inserted
+	 */
+	void insert(int pos, SortedTrieNode child) {
+		if (children == null) {
+			children = new SortedTrieNode[2];
+		}
+		else if (childCount == children.length) {
+			SortedTrieNode[] grown = new SortedTrieNode[2*childCount];
+			System.arraycopy(children, 0, grown, 0, childCount);
+			children = grown;
+		}
+		System.arraycopy(children, pos, children, pos+1, childCount-pos);
+		children[pos] = child;
+		childCount++;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return substr.toString();
+	}
+
+}
@@ -1,6 +1,7 @@
 package trie;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * This class implements a Trie. 
@@ -89,16 +90,15 @@ public class Trie {
 	
 	private static int commonPrefix(String word, String[] allWords, int startIndex, int endIndex, TrieNode ptr) {
 
-		int ptrWordIndex = ptr.substr.wordIndex;
-			
-		String ptrWord = allWords[ptrWordIndex].substring(startIndex, endIndex+1);
-		String insert = word.substring(startIndex);
+		// compare in place, without taking substrings
+		String ptrWord = allWords[ptr.substr.wordIndex];
+		int end = Math.min(endIndex+1, word.length());
 		
-		int match = 0;
-		while (match < ptrWord.length() && match < insert.length() && ptrWord.charAt(match) == insert.charAt(match)) {
+		int match = startIndex;
+		while (match < end && ptrWord.charAt(match) == word.charAt(match)) {
 			match++;
 		}
-		return match-1;
+		return match-startIndex-1;
 			
 	}
 	
@@ -134,67 +134,67 @@ public class Trie {
 	 */
 	public static ArrayList<TrieNode> completionList(TrieNode root, String[] allWords, String prefix) {
 		
-		if (root == null) {
-			return null;
+		ArrayList<TrieNode> completeWords = new ArrayList<>();
+		if (completionList(root, allWords, prefix, completeWords) > 0) {
+			return completeWords;
 		}
-		if (root.firstChild == null && root.substr == null) {
+		else {
 			return null;
 		}
+	}
+	
+	/**
+	 * Given a trie, adds the "completion list" for a prefix to a sink, i.e. all the leaf nodes
+	 * in the trie whose words start with this prefix. Nothing is allocated: characters are
+	 * compared in place through the Indexes of each node, only the nodes along the prefix
+	 * are tested, and each leaf is reached once, so the sink gets no duplicates.
+	 * A caller that clears and reuses one sink completes prefixes without garbage.
+	 *
+	 * @param root Root of Trie that stores all words to search on for completion lists
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param sink Collection to which the leaf nodes are added, in no particular order
+	 * @return Number of leaf nodes added to the sink
+	 */
+	public static int completionList(TrieNode root, String[] allWords, String prefix, Collection<? super TrieNode> sink) {
 		
-		ArrayList<TrieNode> completeWords = new ArrayList<>();
-		ArrayList<TrieNode> temp = new ArrayList<>();
+		if (root == null) {
+			return 0;
+		}
+		return collect(root.substr == null ? root.firstChild : root, allWords, prefix, sink);
+	}
+	
+	private static int collect(TrieNode ptr, String[] allWords, String prefix, Collection<? super TrieNode> sink) {
 		
-		TrieNode ptr = root;
-		while (ptr != null) {
+		int count = 0;
+		for (; ptr != null; ptr = ptr.sibling) {
 			
-			if (ptr.substr == null) {
-				ptr = ptr.firstChild;
+			if (!beginsWith(allWords[ptr.substr.wordIndex], prefix, ptr)) {
+				continue;
 			}
 			
-			String ptrWord = allWords[ptr.substr.wordIndex];
-			
-			if (beginsWith(ptrWord, prefix, ptr)) {
-				
-				//ptr is a word
-				if (ptr.firstChild == null) {
-					completeWords.add(ptr);
-					ptr = ptr.sibling;
-					
-				}
-				//ptr is a prefix
-				else {
-					temp = (completionList(ptr.firstChild, allWords, prefix));
-					ptr = ptr.sibling;
-				}
-								
+			//ptr is a word
+			if (ptr.firstChild == null) {
+				sink.add(ptr);
+				count++;
 			}
-			
+			//ptr is a prefix
 			else {
-				ptr = ptr.sibling;
-			}
-			
-			if (temp != null && !completeWords.containsAll(temp)) {
-				completeWords.addAll(temp);
+				count += collect(ptr.firstChild, allWords, prefix, sink);
 			}
-						
-		}
-		if (!completeWords.isEmpty()) {
-			return completeWords;
-		}
-		else {
-			return null;
 		}
+		return count;
 	}
 	
 	private static boolean beginsWith(String ptrWord, String prefix, TrieNode ptr) {
-		String prefixInTrie = ptrWord.substring(0, ptr.substr.endIndex+1);
-		int smallerWord = Math.min(prefix.length(), prefixInTrie.length());
 		
 		if (ptr.firstChild == null && prefix.length() > ptrWord.length()) {
 			return false;
 		}
 		
-		for (int i=0; i<smallerWord; i++) {
+		// the characters before startIndex were matched at the parent
+		int smallerWord = Math.min(prefix.length(), ptr.substr.endIndex+1);
+		for (int i=ptr.substr.startIndex; i<smallerWord; i++) {
 			if (ptrWord.charAt(i) != prefix.charAt(i)) {
 				return false;
 			}
@@ -13,6 +13,11 @@ public class TrieApp {
 	throws IOException {
 		System.out.print("Enter words file name => ");
 		String wordsFile = stdin.nextLine();
+		// a snapshot saved by an earlier run is searched in place, with nothing to build
+		if (wordsFile.endsWith(".trie")) {
+			snapshotCompletionLists(new MappedTrie(wordsFile));
+			return;
+		}
 		Scanner sc = new Scanner(new File(wordsFile));
 		// words appear one per line in input file
 		// first line has number of words
@@ -27,6 +32,11 @@ public class TrieApp {
 		TrieNode root = Trie.buildTrie(allWords);
 		// print it for verification
 		Trie.print(root, allWords);
+		// save a snapshot if a file name was given on the command line
+		if (args.length > 0) {
+			CompactTrie.from(root, allWords).save(args[0], allWords);
+			System.out.println("\nSnapshot saved to " + args[0]);
+		}
 		// do completion lists
 		completionLists(root, allWords);
 	}
@@ -42,6 +52,26 @@ public class TrieApp {
 		}
 	}
 	
+	private static void snapshotCompletionLists(MappedTrie trie) {
+		System.out.print("\ncompletion list for (enter prefix, or 'quit'): ");
+		String prefix = stdin.nextLine().trim().toLowerCase();
+		while (!"quit".equals(prefix)) {
+			int[] matches = trie.completionList(prefix);
+			if (matches == null) {
+				System.out.println("No match");
+			}
+			else {
+				System.out.print(trie.word(matches[0]));
+				for (int i=1; i < matches.length; i++) {
+					System.out.print(","+trie.word(matches[i]));
+				}
+				System.out.println();
+			}
+			System.out.print("\ncompletion list for: ");
+			prefix = stdin.nextLine().trim().toLowerCase();
+		}
+	}
+	
 	private static void printMatches(ArrayList<TrieNode> matches, String[] allWords) {
 		if (matches == null) {
 			System.out.println("No match");
@@ -0,0 +1,288 @@
+package trie;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the tries that are built or filled all at once against the plain Trie, on the
+ * words of a words file:
+ *
+ * A ConcurrentTrie is filled by several threads at once, with the words and new words
+ * that extend them, while other threads complete prefixes. Afterwards every word must be
+ * in the trie, and the completions of the prefixes of the words must be exactly the words
+ * that start with them. Completions seen while the words went in must be in sorted order
+ * and start with their prefix.
+ *
+ * BulkTrieBuilder.buildTrie and buildSortedTrie must complete every prefix of the words
+ * to the same words as Trie.buildTrie, and have nodes with the same Indexes. Trie.buildTrie keeps word indexes in shorts, so it
+ * is given at most the first 32767 words that are not a prefix of another.
+ *
+ * Prints what failed, and exits with status 1 if anything did.
+ *
+ * Usage: java trie.TrieCheck wordsFile [threads]
+ *
+ */
+public class TrieCheck {
+
+	public static void main(String[] args)
+	throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: java trie.TrieCheck wordsFile [threads]");
+			return;
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		// words appear one per line in input file
+		// first line has number of words
+		Scanner sc = new Scanner(new File(args[0]));
+		int numWords = Integer.parseInt(sc.nextLine());
+		String[] allWords = new String[numWords];
+		for (int i=0; i < allWords.length; i++) {
+			allWords[i] = sc.nextLine().trim().toLowerCase();
+		}
+		sc.close();
+
+		int failures = checkConcurrent(allWords, threads) + checkBulk(allWords);
+		if (failures > 0) {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+
+	/**
+	 * Returns the prefixes of the words, from the empty prefix to the whole words, and
+	 * every word followed by a letter, which no word may start with.
+	 */
+	private static TreeSet<String> prefixes(Iterable<String> words) {
+		TreeSet<String> prefixes = new TreeSet<String>();
+		for (String word : words) {
+			for (int i=0; i <= word.length(); i++) {
+				prefixes.add(word.substring(0, i));
+			}
+			prefixes.add(word + "q");
+		}
+		return prefixes;
+	}
+
+	/**
+	 * Fills a ConcurrentTrie from several threads at once, and checks its words and completions.
+	 *
+	 * @return Number of failed checks
+	 */
+	private static int checkConcurrent(String[] allWords, int threads)
+	throws InterruptedException {
+
+		// every thread inserts all the words, in its own order, and new words of its own
+		final String[][] inserts = new String[threads][];
+		TreeSet<String> expected = new TreeSet<String>(Arrays.asList(allWords));
+		for (int t=0; t < threads; t++) {
+			Random random = new Random(t);
+			ArrayList<String> words = new ArrayList<String>(Arrays.asList(allWords));
+			for (int i=0; i < allWords.length; i++) {
+				StringBuilder sb = new StringBuilder(allWords[random.nextInt(allWords.length)]);
+				for (int j=random.nextInt(3); j >= 0; j--) {
+					sb.append((char)('a' + random.nextInt(26)));
+				}
+				words.add(sb.toString());
+			}
+			Collections.shuffle(words, random);
+			inserts[t] = words.toArray(new String[words.size()]);
+			expected.addAll(words);
+		}
+
+		final ConcurrentTrie trie = new ConcurrentTrie();
+		final String[] queries = allWords.length == 0 ? new String[] { "" } : allWords;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicInteger added = new AtomicInteger(), badReads = new AtomicInteger();
+
+		Thread[] writers = new Thread[threads];
+		for (int t=0; t < threads; t++) {
+			final String[] words = inserts[t];
+			writers[t] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (String word : words) {
+						if (trie.insert(word)) {
+							added.incrementAndGet();
+						}
+						if (!trie.contains(word)) {
+							badReads.incrementAndGet();
+						}
+					}
+				}
+			};
+		}
+		Thread reader = new Thread() {
+			public void run() {
+				Random random = new Random();
+				ArrayList<String> sink = new ArrayList<String>();
+				while (!stop.get()) {
+					String word = queries[random.nextInt(queries.length)];
+					String prefix = word.substring(0, Math.min(word.length(), random.nextInt(3)));
+					sink.clear();
+					trie.completionList(prefix, sink);
+					for (int i=0; i < sink.size(); i++) {
+						if (!sink.get(i).startsWith(prefix) || (i > 0 && sink.get(i-1).compareTo(sink.get(i)) >= 0)) {
+							badReads.incrementAndGet();
+							break;
+						}
+					}
+				}
+			}
+		};
+
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		reader.start();
+		start.countDown();
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		stop.set(true);
+		reader.join();
+
+		int failures = 0;
+		if (badReads.get() > 0) {
+			System.out.println("ConcurrentTrie: " + badReads.get() + " reads during inserts were wrong");
+			failures++;
+		}
+		if (added.get() != expected.size() || trie.size() != expected.size()) {
+			System.out.println("ConcurrentTrie: " + expected.size() + " distinct words, but " + added.get()
+					+ " inserts added a word and size is " + trie.size());
+			failures++;
+		}
+		int missing = 0;
+		for (String word : expected) {
+			if (!trie.contains(word)) {
+				missing++;
+			}
+		}
+		if (missing > 0) {
+			System.out.println("ConcurrentTrie: " + missing + " inserted words not found");
+			failures++;
+		}
+		int wrong = 0;
+		for (String prefix : prefixes(Arrays.asList(allWords))) {
+			ArrayList<String> got = trie.completionList(prefix);
+			ArrayList<String> want = new ArrayList<String>(expected.subSet(prefix, prefix + Character.MAX_VALUE));
+			if (got == null ? !want.isEmpty() : !got.equals(want)) {
+				if (wrong++ == 0) {
+					System.out.println("ConcurrentTrie: wrong completions of \"" + prefix + "\"");
+				}
+			}
+		}
+		if (wrong > 0) {
+			System.out.println("ConcurrentTrie: " + wrong + " prefixes completed wrong");
+			failures++;
+		}
+		System.out.println("ConcurrentTrie: " + threads + " threads inserted " + expected.size() + " distinct words");
+		return failures;
+	}
+
+	/**
+	 * Builds tries of the words with BulkTrieBuilder and Trie.buildTrie, and compares their
+	 * completions.
+	 *
+	 * @return Number of failed checks
+	 */
+	private static int checkBulk(String[] allWords) {
+
+		// Trie.buildTrie needs distinct words that are not prefixes of others, no more than
+		// fit in a short
+		TreeSet<String> sorted = new TreeSet<String>(Arrays.asList(allWords));
+		HashSet<String> seen = new HashSet<String>();
+		ArrayList<String> kept = new ArrayList<String>();
+		for (String word : allWords) {
+			String next = sorted.higher(word);
+			if (word.length() > 0 && (next == null || !next.startsWith(word))
+					&& seen.add(word) && kept.size() < Short.MAX_VALUE) {
+				kept.add(word);
+			}
+		}
+		String[] words = kept.toArray(new String[kept.size()]);
+		String[] sortedWords = words.clone();
+		Arrays.sort(sortedWords);
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		TrieNode plain = Trie.buildTrie(words);
+		TrieNode bulk = BulkTrieBuilder.buildTrie(words, pool);
+		TrieNode plainSorted = Trie.buildTrie(sortedWords);
+		TrieNode bulkSorted = BulkTrieBuilder.buildSortedTrie(sortedWords, pool);
+
+		int wrong = 0;
+		for (String prefix : prefixes(kept)) {
+			if (!indexes(plain, words, prefix).equals(indexes(bulk, words, prefix))
+					|| !indexes(plainSorted, sortedWords, prefix).equals(indexes(bulkSorted, sortedWords, prefix))) {
+				if (wrong++ == 0) {
+					System.out.println("BulkTrieBuilder: wrong completions of \"" + prefix + "\"");
+				}
+			}
+		}
+		System.out.println("BulkTrieBuilder: compared with Trie.buildTrie on " + words.length + " words");
+		int failures = 0;
+		if (wrong > 0) {
+			System.out.println("BulkTrieBuilder: " + wrong + " prefixes completed wrong");
+			failures++;
+		}
+		if (!nodes(plain).equals(nodes(bulk)) || !nodes(plainSorted).equals(nodes(bulkSorted))) {
+			System.out.println("BulkTrieBuilder: nodes hold other Indexes than those of Trie.buildTrie");
+			failures++;
+		}
+		return failures;
+	}
+
+	/**
+	 * Returns the Indexes of all nodes of a trie below the root, as "wordIndex startIndex
+	 * endIndex", in sorted order.
+	 */
+	private static ArrayList<String> nodes(TrieNode root) {
+		ArrayList<String> nodes = new ArrayList<String>();
+		ArrayList<TrieNode> stack = new ArrayList<TrieNode>();
+		for (TrieNode child=root.firstChild; child != null; child=child.sibling) {
+			stack.add(child);
+		}
+		while (!stack.isEmpty()) {
+			TrieNode node = stack.remove(stack.size()-1);
+			nodes.add(node.substr.wordIndex + " " + node.substr.startIndex + " " + node.substr.endIndex);
+			for (TrieNode child=node.firstChild; child != null; child=child.sibling) {
+				stack.add(child);
+			}
+		}
+		Collections.sort(nodes);
+		return nodes;
+	}
+
+	/**
+	 * Returns the indexes of the words a trie completes a prefix to, in sorted order, with
+	 * any repeat kept, or an empty list if there are none.
+	 */
+	private static ArrayList<Integer> indexes(TrieNode root, String[] allWords, String prefix) {
+		ArrayList<Integer> indexes = new ArrayList<Integer>();
+		ArrayList<TrieNode> matches = Trie.completionList(root, allWords, prefix);
+		if (matches != null) {
+			for (TrieNode match : matches) {
+				indexes.add(match.substr.wordIndex);
+			}
+		}
+		Collections.sort(indexes);
+		return indexes;
+	}
+}